@@ -0,0 +1,76 @@
+package com.appeaser.deckview.views;
+
+import com.appeaser.deckview.helpers.DeckChildViewTransform;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Benchmarks the DeckViewLayoutAlgorithm entry points that run on layout or on every scroll step.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class DeckViewLayoutAlgorithmBenchmark {
+
+    // The number of distinct inputs that the curve conversions cycle through, so that the JIT
+    // can not fold them into constants
+    private static final int INPUT_COUNT = 1024;
+
+    @Param({"10", "100", "1000", "10000", "100000", "1000000"})
+    int taskCount;
+
+    DeckViewLayoutAlgorithm mAlgorithm;
+    DeckChildViewTransform mTransform = new DeckChildViewTransform();
+    DeckChildViewTransform mPrevTransform = new DeckChildViewTransform();
+    float mStackScroll;
+    int[] mScreenYs = new int[INPUT_COUNT];
+    float[] mProgresses = new float[INPUT_COUNT];
+    int mInput;
+
+    @Setup
+    public void setUp() {
+        mAlgorithm = LayoutAlgorithms.create(taskCount);
+        // Scroll to the middle of the deck
+        mStackScroll = (mAlgorithm.mMinScrollP + mAlgorithm.mMaxScrollP) / 2f;
+        for (int i = 0; i < INPUT_COUNT; i++) {
+            mScreenYs[i] = i * LayoutAlgorithms.WINDOW_HEIGHT / INPUT_COUNT;
+            mProgresses[i] = (float) i / INPUT_COUNT;
+        }
+    }
+
+    private int nextInput() {
+        mInput = (mInput + 1) & (INPUT_COUNT - 1);
+        return mInput;
+    }
+
+    @Benchmark
+    public float computeMinMaxScroll() {
+        mAlgorithm.computeMinMaxScroll(taskCount, false, false);
+        return mAlgorithm.mMaxScrollP;
+    }
+
+    @Benchmark
+    public DeckChildViewTransform getStackTransform() {
+        return mAlgorithm.getStackTransform(taskCount / 2, mStackScroll, mTransform,
+                mPrevTransform);
+    }
+
+    @Benchmark
+    public float screenYToCurveProgress() {
+        return mAlgorithm.screenYToCurveProgress(mScreenYs[nextInput()]);
+    }
+
+    @Benchmark
+    public int curveProgressToScreenY() {
+        return mAlgorithm.curveProgressToScreenY(mProgresses[nextInput()]);
+    }
+}
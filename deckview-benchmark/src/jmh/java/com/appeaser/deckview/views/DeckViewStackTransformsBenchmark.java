@@ -0,0 +1,58 @@
+package com.appeaser.deckview.views;
+
+import com.appeaser.deckview.helpers.DeckChildViewTransform;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Benchmarks the per-frame transform pass of DeckView.updateStackTransforms().  A DeckView can
+ * not be created without a device, so this runs the same work on the layout algorithm directly,
+ * with a transform array sized the way DeckView sizes it.  Each invocation scrolls by one step,
+ * the way a fling does.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class DeckViewStackTransformsBenchmark {
+
+    // The scroll progress covered per frame during a fast fling
+    private static final float SCROLL_STEP = 0.02f;
+
+    @Param({"10", "100", "1000", "10000", "100000", "1000000"})
+    int taskCount;
+
+    DeckViewLayoutAlgorithm mAlgorithm;
+    DeckChildViewTransform[] mTransforms;
+    int[] mVisibleRange = new int[2];
+    float mStackScroll;
+
+    @Setup
+    public void setUp() {
+        mAlgorithm = LayoutAlgorithms.create(taskCount);
+        int capacity = mAlgorithm.getMaxCandidateTaskCount();
+        mTransforms = new DeckChildViewTransform[capacity];
+        for (int i = 0; i < capacity; i++) {
+            mTransforms[i] = new DeckChildViewTransform();
+        }
+        mStackScroll = mAlgorithm.mMinScrollP;
+    }
+
+    @Benchmark
+    public boolean updateStackTransforms() {
+        mStackScroll += SCROLL_STEP;
+        if (mStackScroll > mAlgorithm.mMaxScrollP) {
+            mStackScroll = mAlgorithm.mMinScrollP;
+        }
+        return mAlgorithm.computeVisibleStackTransforms(mStackScroll, mTransforms, mVisibleRange,
+                false);
+    }
+}
@@ -0,0 +1,30 @@
+package com.appeaser.deckview.views;
+
+import android.graphics.Rect;
+
+import com.appeaser.deckview.helpers.BenchmarkConfigs;
+
+/**
+ * Creates layout algorithms laid out for a typical phone screen, without an Android context.
+ */
+final class LayoutAlgorithms {
+
+    static final int WINDOW_WIDTH = 1080;
+    static final int WINDOW_HEIGHT = 1920;
+
+    private LayoutAlgorithms() {
+    }
+
+    /**
+     * Returns a layout algorithm for the given number of tasks, with its rects and min/max
+     * scroll computed.
+     */
+    static DeckViewLayoutAlgorithm create(int taskCount) {
+        DeckViewLayoutAlgorithm algorithm = new DeckViewLayoutAlgorithm(
+                BenchmarkConfigs.createLayoutConfig());
+        algorithm.computeRect(WINDOW_WIDTH, WINDOW_HEIGHT,
+                new Rect(0, 0, WINDOW_WIDTH, WINDOW_HEIGHT));
+        algorithm.computeMinMaxScroll(taskCount, false, false);
+        return algorithm;
+    }
+}
@@ -0,0 +1,69 @@
+package com.appeaser.deckview.views;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Benchmarks the stack curve lookups per resolution and interpolation, and the one-time cost of
+ * building the tables of a curve.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class StackCurveBenchmark {
+
+    private static final int INPUT_COUNT = 1024;
+
+    @Param({"64", "250", "1024"})
+    int resolution;
+
+    @Param({"linear", "cubic"})
+    String interpolation;
+
+    StackCurve mCurve = new LogStackCurve();
+    DeckViewLayoutAlgorithm mAlgorithm;
+    int[] mScreenYs = new int[INPUT_COUNT];
+    float[] mProgresses = new float[INPUT_COUNT];
+    int mInput;
+
+    @Setup
+    public void setUp() {
+        mAlgorithm = LayoutAlgorithms.create(1000);
+        mAlgorithm.setStackCurve(mCurve, resolution, "cubic".equals(interpolation) ?
+                StackCurve.INTERPOLATION_CUBIC : StackCurve.INTERPOLATION_LINEAR);
+        for (int i = 0; i < INPUT_COUNT; i++) {
+            mScreenYs[i] = i * LayoutAlgorithms.WINDOW_HEIGHT / INPUT_COUNT;
+            mProgresses[i] = (float) i / INPUT_COUNT;
+        }
+    }
+
+    private int nextInput() {
+        mInput = (mInput + 1) & (INPUT_COUNT - 1);
+        return mInput;
+    }
+
+    @Benchmark
+    public float screenYToCurveProgress() {
+        return mAlgorithm.screenYToCurveProgress(mScreenYs[nextInput()]);
+    }
+
+    @Benchmark
+    public int curveProgressToScreenY() {
+        return mAlgorithm.curveProgressToScreenY(mProgresses[nextInput()]);
+    }
+
+    @Benchmark
+    @OutputTimeUnit(TimeUnit.MICROSECONDS)
+    public StackCurveTable buildTable() {
+        // Bypasses the shared cache to measure the cost of the first use of a curve
+        return new StackCurveTable(mCurve, resolution);
+    }
+}
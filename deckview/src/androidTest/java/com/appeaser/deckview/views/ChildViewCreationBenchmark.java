@@ -0,0 +1,83 @@
+package com.appeaser.deckview.views;
+
+import android.app.Instrumentation;
+import android.content.Context;
+import android.os.Bundle;
+import android.support.test.InstrumentationRegistry;
+import android.support.test.runner.AndroidJUnit4;
+import android.util.Log;
+import android.view.LayoutInflater;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.util.Arrays;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Measures how long DeckView.createChildView() takes in each CHILD_VIEW_CREATION_* mode on the
+ * device.  Run with ./gradlew :deckview:connectedAndroidTest, the median time per view of each
+ * mode is logged under the tag ChildViewCreation and reported as instrumentation status.
+ */
+@RunWith(AndroidJUnit4.class)
+public class ChildViewCreationBenchmark {
+
+    private static final String TAG = "ChildViewCreation";
+
+    private static final int WARMUP_ROUNDS = 5;
+    private static final int ROUNDS = 30;
+    private static final int VIEWS_PER_ROUND = 10;
+
+    private static final int[] MODES = {
+            DeckView.CHILD_VIEW_CREATION_INFLATE,
+            DeckView.CHILD_VIEW_CREATION_PROGRAMMATIC
+    };
+
+    @Test
+    public void createChildViewPerMode() {
+        final Instrumentation instrumentation = InstrumentationRegistry.getInstrumentation();
+        final Context context = InstrumentationRegistry.getTargetContext();
+        final long[][] roundNanos = new long[MODES.length][ROUNDS];
+
+        // The views are created on the main thread, like in the deck
+        instrumentation.runOnMainSync(new Runnable() {
+            @Override
+            public void run() {
+                DeckView<Object> deckView = new DeckView<>(context);
+                // The inflater is all that createChildView() needs from initialize()
+                deckView.mInflater = LayoutInflater.from(context);
+
+                // Both modes must build the same hierarchy for the comparison to be fair
+                DeckChildView<Object> inflated =
+                        deckView.createChildView(DeckView.CHILD_VIEW_CREATION_INFLATE);
+                DeckChildView<Object> built =
+                        deckView.createChildView(DeckView.CHILD_VIEW_CREATION_PROGRAMMATIC);
+                assertEquals(inflated.getChildCount(), built.getChildCount());
+
+                // Alternate the modes between rounds, so that both see the same device state
+                for (int round = -WARMUP_ROUNDS; round < ROUNDS; round++) {
+                    for (int m = 0; m < MODES.length; m++) {
+                        long start = System.nanoTime();
+                        for (int i = 0; i < VIEWS_PER_ROUND; i++) {
+                            deckView.createChildView(MODES[m]);
+                        }
+                        if (round >= 0) {
+                            roundNanos[m][round] = System.nanoTime() - start;
+                        }
+                    }
+                }
+            }
+        });
+
+        Bundle results = new Bundle();
+        for (int m = 0; m < MODES.length; m++) {
+            Arrays.sort(roundNanos[m]);
+            long medianMicros = roundNanos[m][ROUNDS / 2] / VIEWS_PER_ROUND / 1000;
+            Log.i(TAG, "mode " + MODES[m] + ": median " + medianMicros + "us per view over "
+                    + ROUNDS + " rounds of " + VIEWS_PER_ROUND + " views");
+            results.putLong("mode_" + MODES[m] + "_median_us", medianMicros);
+        }
+        instrumentation.sendStatus(0, results);
+    }
+}
@@ -98,6 +98,13 @@ public class DeckViewConfig {
                 R.interpolator.decelerate_quint);
     }
 
+    /**
+     * Creates a configuration without resources, for tests and benchmarks that run without a
+     * Context.  All values are unset, callers fill in the ones they read.
+     */
+    DeckViewConfig() {
+    }
+
     /**
      * Updates the configuration to the current context
      */
@@ -0,0 +1,880 @@
+package com.appeaser.deckview.helpers;
+
+import android.annotation.TargetApi;
+import android.graphics.Bitmap;
+import android.graphics.BitmapFactory;
+import android.graphics.Canvas;
+import android.graphics.Color;
+import android.graphics.Paint;
+import android.graphics.Rect;
+import android.os.Build;
+import android.os.Handler;
+import android.os.Looper;
+import android.os.Process;
+
+import com.appeaser.deckview.utilities.BitmapPool;
+import com.appeaser.deckview.utilities.ThumbnailCache;
+import com.appeaser.deckview.utilities.ThumbnailDiskCache;
+import com.appeaser.deckview.views.DeckChildView;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.lang.ref.WeakReference;
+import java.util.HashMap;
+import java.util.PriorityQueue;
+import java.util.WeakHashMap;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Loads the thumbnails of the cards of a deck.  Thumbnails are decoded at the size of the cards
+ * on a bounded pool of background threads, and delivered to
+ * {@link DeckChildView#onThumbnailLoaded} on the main thread.  A view has at most one pending
+ * request: binding it to another item replaces the request, and returning it to the view pool
+ * cancels it.  Results for a view that has been bound to another item in the meantime are
+ * dropped.  Queued requests are decoded in the order of their priority, which the deck updates
+ * as its cards move, so that the front cards are decoded before the ones that barely peek out
+ * behind them.  Prefetches come after all the requests of views.
+ * <p>
+ * Decoded thumbnails are kept in a {@link ThumbnailCache}, keyed by item, so that the items
+ * must implement equals() and hashCode().  Thumbnails found in the cache are delivered right
+ * away, without a request.  With a {@link BitmapPool} set on the cache, the thumbnails of the
+ * views that go back to the view pool are decoded into again once they are no longer cached.
+ * Thumbnails can also be prefetched into the cache ahead of the views that will show them.
+ * With a {@link ThumbnailDiskCache}, thumbnails are also stored scaled
+ * to the size of the cards, and read back from there after a process restart.
+ * <p>
+ * In progressive mode (see {@link #setProgressive}), views first get a small RGB_565 preview,
+ * which is cheap to decode and kept in a cache of its own, and the full thumbnail is decoded
+ * after the previews of all the other views.  Views that show too little of their thumbnail to
+ * tell the difference can keep the preview, see {@link #setUpgradeWanted}.
+ * <p>
+ * On Android O and later, thumbnails can be kept as hardware bitmaps, which only live in
+ * graphics memory and are drawn without uploading them (see {@link #setHardwareBitmaps}).
+ * <p>
+ * Set the loader with {@link com.appeaser.deckview.views.DeckView#setThumbnailLoader}, the deck
+ * then requests the thumbnail of each card right before
+ * {@link com.appeaser.deckview.views.DeckView.Callback#loadViewData}, which only has to bind the
+ * header.  All methods must be called on the main thread.
+ */
+public class ThumbnailLoader<T> {
+
+    /**
+     * Supplies the encoded thumbnails.
+     */
+    public interface ThumbnailSource<T> {
+        /**
+         * Opens the encoded thumbnail of the given item, or returns null if it has none.  Called
+         * on a background thread, the loader closes the stream.
+         */
+        InputStream openThumbnail(T item) throws IOException;
+
+        /**
+         * Returns an id of the thumbnail of the given item that stays the same across process
+         * restarts, such as a hash of its url, or null to not store it in the disk cache.
+         */
+        String getThumbnailId(T item);
+    }
+
+    public static final int DEFAULT_THREAD_COUNT = 2;
+
+    // Previews are this many times smaller than the cards in each dimension
+    static final int PREVIEW_SCALE = 8;
+    // The share of the heap used by the default preview cache
+    private static final int PREVIEW_CACHE_HEAP_DIVISOR = 64;
+    // Priorities are rounded to this many steps per unit, so that requests are only moved in the
+    // queue when their priority changes noticeably
+    static final int PRIORITY_STEPS = 8;
+
+    private final ThumbnailSource<T> mSource;
+    private final ThreadPoolExecutor mExecutor;
+    // The queued requests in the order they are decoded, guarded by itself.  The executor runs a
+    // task per queued request that takes the first request from here, so that the order holds
+    // even when the executor hands the task straight to a new thread.
+    private final PriorityQueue<Request> mQueue = new PriorityQueue<>();
+    private final Runnable mRunNextRequest = new Runnable() {
+        @Override
+        public void run() {
+            Request request;
+            synchronized (mQueue) {
+                request = mQueue.poll();
+            }
+            if (request != null) {
+                request.run();
+            }
+        }
+    };
+    // Orders the requests that were made with the same priority
+    private long mRequestCount;
+    private final Handler mMainHandler = new Handler(Looper.getMainLooper());
+    // Read by the decoding threads
+    private volatile ThumbnailCache mCache = ThumbnailCache.createDefault();
+    private volatile ThumbnailDiskCache mDiskCache;
+    private volatile ThumbnailCache mPreviewCache;
+    private volatile boolean mHardwareBitmaps;
+    private boolean mProgressive;
+    // The pending request of each view
+    private final WeakHashMap<DeckChildView<T>, Request> mRequests = new WeakHashMap<>();
+    // The pending prefetch of each item
+    private final HashMap<T, Request> mPrefetches = new HashMap<>();
+    // The thumbnail delivered to each view, acquired from the cache until it is released
+    private final WeakHashMap<DeckChildView<T>, Bitmap> mBoundThumbnails = new WeakHashMap<>();
+
+    public ThumbnailLoader(ThumbnailSource<T> source) {
+        this(source, DEFAULT_THREAD_COUNT);
+    }
+
+    /**
+     * @param source      the source of the encoded thumbnails
+     * @param threadCount the number of threads that decode thumbnails at the same time
+     */
+    public ThumbnailLoader(ThumbnailSource<T> source, int threadCount) {
+        if (threadCount <= 0) {
+            throw new IllegalArgumentException("threadCount must be positive");
+        }
+        mSource = source;
+        mExecutor = new ThreadPoolExecutor(threadCount, threadCount, 1, TimeUnit.SECONDS,
+                new LinkedBlockingQueue<Runnable>(), new BackgroundThreadFactory());
+        mExecutor.allowCoreThreadTimeOut(true);
+    }
+
+    /**
+     * Sets the cache of the decoded thumbnails, which may be shared with other loaders, or null
+     * to not cache them.
+     */
+    public void setCache(ThumbnailCache cache) {
+        mCache = cache;
+    }
+
+    public ThumbnailCache getCache() {
+        return mCache;
+    }
+
+    /**
+     * Sets the disk cache of the scaled thumbnails, which may be shared with other loaders, or
+     * null to not store them.
+     */
+    public void setDiskCache(ThumbnailDiskCache diskCache) {
+        mDiskCache = diskCache;
+    }
+
+    public ThumbnailDiskCache getDiskCache() {
+        return mDiskCache;
+    }
+
+    /**
+     * Sets whether views first get a small preview of their thumbnail, and the full thumbnail
+     * after the previews of the other views.  Only applies to the requests made afterwards.
+     */
+    public void setProgressive(boolean progressive) {
+        mProgressive = progressive;
+        if (progressive && mPreviewCache == null) {
+            mPreviewCache = new ThumbnailCache((int) Math.min(Integer.MAX_VALUE,
+                    Runtime.getRuntime().maxMemory() / PREVIEW_CACHE_HEAP_DIVISOR));
+        }
+    }
+
+    public boolean isProgressive() {
+        return mProgressive;
+    }
+
+    /**
+     * Sets the cache of the previews of progressive mode, which may be shared with other
+     * loaders.  By default, the previews are cached in a 64th of the heap.
+     */
+    public void setPreviewCache(ThumbnailCache previewCache) {
+        mPreviewCache = previewCache;
+    }
+
+    public ThumbnailCache getPreviewCache() {
+        return mPreviewCache;
+    }
+
+    /**
+     * Sets whether the decoded thumbnails are copied into hardware bitmaps, on Android O and
+     * later.  The software bitmaps they were decoded into go straight back to the bitmap pool, so
+     * that the cached thumbnails no longer take heap memory, and the thumbnail views draw them
+     * without uploading them to the GPU first.  Hardware bitmaps are immutable, so they are not
+     * pooled once they are evicted.  Previews stay software bitmaps.  Ignored on older versions.
+     */
+    public void setHardwareBitmaps(boolean hardwareBitmaps) {
+        mHardwareBitmaps = hardwareBitmaps;
+    }
+
+    /**
+     * Returns whether the decoded thumbnails are copied into hardware bitmaps, which is never the
+     * case before Android O.
+     */
+    public boolean isHardwareBitmaps() {
+        return mHardwareBitmaps && Build.VERSION.SDK_INT >= Build.VERSION_CODES.O;
+    }
+
+    /**
+     * Loads the thumbnail of the given item into the view, replacing any pending request of the
+     * view.  A cached thumbnail is delivered before this method returns.
+     */
+    public void load(DeckChildView<T> dcv, T item) {
+        load(dcv, item, 0, 0);
+    }
+
+    /**
+     * Loads the thumbnail of the given item into a view of the given size, which is used to
+     * store the thumbnail in the disk cache.  0 for an unknown size.
+     */
+    public void load(DeckChildView<T> dcv, T item, int width, int height) {
+        load(dcv, item, width, height, 0f);
+    }
+
+    /**
+     * Loads the thumbnail of the given item into a view of the given size, with the given
+     * priority.  Requests with a higher priority are decoded first.
+     */
+    public void load(DeckChildView<T> dcv, T item, int width, int height, float priority) {
+        cancel(dcv);
+        // The view request takes over from a prefetch that has not started yet
+        Request prefetch = mPrefetches.remove(item);
+        if (prefetch != null) {
+            prefetch.cancel();
+        }
+        ThumbnailCache cache = mCache;
+        Bitmap cached = cache != null ? cache.getAndAcquire(item) : null;
+        if (cached != null) {
+            deliverThumbnail(dcv, item, cached, cache);
+            return;
+        }
+        Request request = new Request(dcv, item, width, height, priority);
+        if (mProgressive && width > 0 && height > 0) {
+            ThumbnailCache previewCache = mPreviewCache;
+            Bitmap preview = previewCache != null ? previewCache.get(item) : null;
+            if (preview != null) {
+                deliverPreview(dcv, item, preview);
+            } else {
+                request.stage = Request.STAGE_PREVIEW;
+            }
+        }
+        mRequests.put(dcv, request);
+        enqueue(request);
+    }
+
+    /**
+     * Loads the thumbnail of the given item into the view like {@link #load}, unless a thumbnail
+     * has been delivered to the view since it was last released, or a request of the view is
+     * pending.  For views that are shown again while still bound to the item.
+     */
+    public void loadIfMissing(DeckChildView<T> dcv, T item, int width, int height,
+                              float priority) {
+        if (mBoundThumbnails.containsKey(dcv) || mRequests.containsKey(dcv)) return;
+        load(dcv, item, width, height, priority);
+    }
+
+    /**
+     * Returns whether any view has a request that is queued or being decoded, not counting the
+     * parked requests of progressive mode.
+     */
+    public boolean hasPendingRequests() {
+        for (Request request : mRequests.values()) {
+            if (!request.parked) return true;
+        }
+        return false;
+    }
+
+    /**
+     * Returns whether any view keeps its preview until {@link #setUpgradeWanted} is set for it.
+     */
+    public boolean hasParkedRequests() {
+        for (Request request : mRequests.values()) {
+            if (request.parked) return true;
+        }
+        return false;
+    }
+
+    /**
+     * Changes the priority of the pending request of the given view, if it has not started yet.
+     * The request is only moved in the queue if the rounded priority changes.
+     */
+    public void setPriority(DeckChildView<T> dcv, float priority) {
+        Request request = mRequests.get(dcv);
+        float roundedPriority = roundPriority(priority);
+        if (request == null || Float.compare(request.priority, roundedPriority) == 0) return;
+        // The queue only orders the requests as they are added
+        if (request.parked) {
+            request.priority = roundedPriority;
+        } else if (dequeue(request)) {
+            request.priority = roundedPriority;
+            enqueue(request);
+        }
+    }
+
+    static float roundPriority(float priority) {
+        return (float) Math.floor(priority * PRIORITY_STEPS) / PRIORITY_STEPS;
+    }
+
+    /**
+     * Sets whether the full thumbnail should replace the preview of the given view in progressive
+     * mode, which is the default.  Views that show only a small part of their thumbnail can keep
+     * the preview, their full thumbnail is decoded once this is set again.
+     */
+    public void setUpgradeWanted(DeckChildView<T> dcv, boolean upgrade) {
+        Request request = mRequests.get(dcv);
+        if (request == null || request.upgrade == upgrade) return;
+        request.upgrade = upgrade;
+        // Previews are always decoded, the upgrade is decided once the preview is delivered
+        if (request.stage != Request.STAGE_FULL) return;
+        if (upgrade) {
+            if (request.parked) {
+                request.parked = false;
+                enqueue(request);
+            }
+        } else if (dequeue(request)) {
+            park(request);
+        }
+    }
+
+    private void enqueue(Request request) {
+        synchronized (mQueue) {
+            mQueue.add(request);
+        }
+        mExecutor.execute(mRunNextRequest);
+    }
+
+    /**
+     * Removes the given request from the queue, returns false if it was not queued.  The task
+     * that would have run it then runs the next request, or nothing.
+     */
+    private boolean dequeue(Request request) {
+        synchronized (mQueue) {
+            return mQueue.remove(request);
+        }
+    }
+
+    /**
+     * Decodes the thumbnail of the given item into the cache ahead of time, for a view of the
+     * given size, unless it is already being prefetched.  Does nothing without a cache.
+     */
+    public void prefetch(T item, int width, int height) {
+        if (mCache == null || mPrefetches.containsKey(item)) return;
+        Request request = new Request(null, item, width, height, 0f);
+        mPrefetches.put(item, request);
+        enqueue(request);
+    }
+
+    /**
+     * Cancels the pending prefetches, for example because the deck is now scrolled the other
+     * way.
+     */
+    public void cancelPrefetches() {
+        for (Request request : mPrefetches.values()) {
+            request.cancel();
+        }
+        mPrefetches.clear();
+    }
+
+    /**
+     * Cancels the pending request of the given view, if any.
+     */
+    public void cancel(DeckChildView<T> dcv) {
+        Request request = mRequests.remove(dcv);
+        if (request != null) {
+            request.cancel();
+        }
+    }
+
+    /**
+     * Cancels the pending request of the given view, and releases the thumbnail delivered to it
+     * so that it can be decoded into again once it is no longer cached.  The view must no longer
+     * draw the thumbnail.
+     */
+    public void release(DeckChildView<T> dcv) {
+        cancel(dcv);
+        Bitmap thumbnail = mBoundThumbnails.remove(dcv);
+        ThumbnailCache cache = mCache;
+        if (thumbnail != null && cache != null) {
+            cache.release(thumbnail);
+        }
+    }
+
+    /**
+     * Cancels all pending requests and prefetches.
+     */
+    public void cancelAll() {
+        for (Request request : mRequests.values()) {
+            request.cancel();
+        }
+        mRequests.clear();
+        cancelPrefetches();
+    }
+
+    /**
+     * Returns the thumbnail of the given item, from the disk cache if it has one for views of
+     * the given size, or else decoded from the source at the given size and stored in the disk
+     * cache.  Returns null if it could not be decoded.  Called on a background thread.
+     */
+    Bitmap loadThumbnail(T item, int width, int height) {
+        ThumbnailCache cache = mCache;
+        BitmapPool bitmapPool = cache != null ? cache.getBitmapPool() : null;
+        ThumbnailDiskCache diskCache = mDiskCache;
+        String id = getDiskCacheId(item, width, height);
+        if (id != null) {
+            Bitmap thumbnail = decode(diskCache.get(id, width, height), width, height,
+                    bitmapPool);
+            if (thumbnail != null) {
+                return thumbnail;
+            }
+        }
+
+        Bitmap thumbnail;
+        try {
+            thumbnail = decode(mSource.openThumbnail(item), width, height, bitmapPool);
+        } catch (IOException e) {
+            return null;
+        }
+        if (thumbnail != null && id != null) {
+            diskCache.put(id, width, height, thumbnail);
+        }
+        return thumbnail;
+    }
+
+    /**
+     * Reads the encoded thumbnail of the request, from the disk cache if it has one, and decodes
+     * the preview from it.  The encoded thumbnail is kept in the request to decode the full
+     * thumbnail from.  Called on a background thread.
+     */
+    Bitmap loadPreview(Request request) {
+        String id = getDiskCacheId(request.item, request.width, request.height);
+        byte[] data = null;
+        if (id != null) {
+            data = readFully(mDiskCache.get(id, request.width, request.height));
+        }
+        boolean fromDiskCache = data != null;
+        if (data == null) {
+            try {
+                data = readFully(mSource.openThumbnail(request.item));
+            } catch (IOException e) {
+                return null;
+            }
+        }
+        request.setData(data, fromDiskCache);
+        return data != null ? decodePreview(data, request.width / PREVIEW_SCALE,
+                request.height / PREVIEW_SCALE) : null;
+    }
+
+    /**
+     * Decodes the full thumbnail of the request from the encoded thumbnail that the preview was
+     * decoded from, if any, or else loads it like {@link #loadThumbnail}.  Called on a
+     * background thread.
+     */
+    Bitmap loadFull(Request request) {
+        byte[] data = request.takeData();
+        if (data == null) {
+            return loadThumbnail(request.item, request.width, request.height);
+        }
+        ThumbnailCache cache = mCache;
+        Bitmap thumbnail = decode(data, request.width, request.height,
+                cache != null ? cache.getBitmapPool() : null);
+        String id = getDiskCacheId(request.item, request.width, request.height);
+        if (thumbnail != null && id != null && !request.isDataFromDiskCache()) {
+            mDiskCache.put(id, request.width, request.height, thumbnail);
+        }
+        return thumbnail;
+    }
+
+    private String getDiskCacheId(T item, int width, int height) {
+        return (mDiskCache != null && width > 0 && height > 0) ?
+                mSource.getThumbnailId(item) : null;
+    }
+
+    /**
+     * Decodes and closes the given stream, returns null for a null stream or if it could not be
+     * decoded.  Unless the given size is 0, images larger than the size are subsampled while
+     * decoding and then scaled down to exactly the size, so that the thumbnail view draws them
+     * unscaled and no more pixels than the card shows are kept in memory.  Bitmaps from the given
+     * pool, if any, are decoded and scaled into, and the intermediate bitmaps go back to it.
+     */
+    static Bitmap decode(InputStream in, int width, int height, BitmapPool bitmapPool) {
+        if (in == null) return null;
+        if (width <= 0 || height <= 0) {
+            try {
+                BitmapFactory.Options opts = new BitmapFactory.Options();
+                opts.inMutable = true;
+                return BitmapFactory.decodeStream(in, null, opts);
+            } finally {
+                closeQuietly(in);
+            }
+        }
+        // Read the image once, the bounds and the pixels are decoded separately
+        byte[] data = readFully(in);
+        return data != null ? decode(data, width, height, bitmapPool) : null;
+    }
+
+    /**
+     * Decodes the given encoded image like {@link #decode(InputStream, int, int, BitmapPool)},
+     * for a known size.
+     */
+    static Bitmap decode(byte[] data, int width, int height, BitmapPool bitmapPool) {
+        BitmapFactory.Options opts = new BitmapFactory.Options();
+        opts.inJustDecodeBounds = true;
+        BitmapFactory.decodeByteArray(data, 0, data.length, opts);
+        if (opts.outWidth <= 0 || opts.outHeight <= 0) {
+            return null;
+        }
+        opts.inJustDecodeBounds = false;
+        opts.inMutable = true;
+        opts.inSampleSize = computeSampleSize(opts.outWidth, opts.outHeight, width, height);
+        // Before KitKat, only images that are not subsampled can be decoded into a bitmap
+        if (bitmapPool != null && (Build.VERSION.SDK_INT >= Build.VERSION_CODES.KITKAT
+                || opts.inSampleSize == 1)) {
+            int sampleSize = opts.inSampleSize;
+            opts.inBitmap = bitmapPool.getForDecode((opts.outWidth + sampleSize - 1) / sampleSize,
+                    (opts.outHeight + sampleSize - 1) / sampleSize, Bitmap.Config.ARGB_8888);
+        }
+        Bitmap bitmap;
+        try {
+            bitmap = BitmapFactory.decodeByteArray(data, 0, data.length, opts);
+        } catch (IllegalArgumentException e) {
+            if (opts.inBitmap == null) {
+                // The image itself can not be decoded
+                return null;
+            }
+            // The pooled bitmap does not fit the image after all
+            bitmapPool.put(opts.inBitmap);
+            opts.inBitmap = null;
+            bitmap = BitmapFactory.decodeByteArray(data, 0, data.length, opts);
+        }
+        if (bitmap == null || (bitmap.getWidth() <= width && bitmap.getHeight() <= height)) {
+            // Smaller images are not scaled up, the thumbnail view scales them while drawing
+            return bitmap;
+        }
+
+        Bitmap scaled = bitmapPool != null ?
+                bitmapPool.get(width, height, Bitmap.Config.ARGB_8888) : null;
+        if (scaled == null) {
+            scaled = Bitmap.createBitmap(width, height, Bitmap.Config.ARGB_8888);
+        } else if (bitmap.hasAlpha()) {
+            scaled.eraseColor(Color.TRANSPARENT);
+        }
+        new Canvas(scaled).drawBitmap(bitmap, null, new Rect(0, 0, width, height),
+                new Paint(Paint.FILTER_BITMAP_FLAG));
+        scaled.setHasAlpha(bitmap.hasAlpha());
+        if (bitmapPool != null) {
+            bitmapPool.put(bitmap);
+        } else {
+            bitmap.recycle();
+        }
+        return scaled;
+    }
+
+    /**
+     * Returns the largest power of two subsampling of an image of the given size that is still
+     * at least as large as the target size in both dimensions.
+     */
+    static int computeSampleSize(int imageWidth, int imageHeight, int width, int height) {
+        int sampleSize = 1;
+        while (imageWidth / (sampleSize * 2) >= width
+                && imageHeight / (sampleSize * 2) >= height) {
+            sampleSize *= 2;
+        }
+        return sampleSize;
+    }
+
+    /**
+     * Decodes the given encoded image subsampled to at least the given size, in RGB_565 unless it
+     * has alpha.  The preview is not scaled further, the thumbnail view scales it while drawing.
+     */
+    static Bitmap decodePreview(byte[] data, int width, int height) {
+        BitmapFactory.Options opts = new BitmapFactory.Options();
+        opts.inJustDecodeBounds = true;
+        BitmapFactory.decodeByteArray(data, 0, data.length, opts);
+        if (opts.outWidth <= 0 || opts.outHeight <= 0) {
+            return null;
+        }
+        opts.inJustDecodeBounds = false;
+        opts.inSampleSize = computeSampleSize(opts.outWidth, opts.outHeight, Math.max(1, width),
+                Math.max(1, height));
+        opts.inPreferredConfig = Bitmap.Config.RGB_565;
+        return BitmapFactory.decodeByteArray(data, 0, data.length, opts);
+    }
+
+    /**
+     * Returns a hardware bitmap copy of the given thumbnail, which goes back to the given pool,
+     * if any, or else the thumbnail itself if it could not be copied.  The thumbnail must already
+     * be in the disk cache, which can not compress hardware bitmaps.
+     */
+    @TargetApi(Build.VERSION_CODES.O)
+    static Bitmap toHardwareBitmap(Bitmap thumbnail, BitmapPool bitmapPool) {
+        Bitmap hardwareBitmap = thumbnail.copy(Bitmap.Config.HARDWARE, false);
+        if (hardwareBitmap == null) {
+            return thumbnail;
+        }
+        if (bitmapPool != null) {
+            bitmapPool.put(thumbnail);
+        } else {
+            thumbnail.recycle();
+        }
+        return hardwareBitmap;
+    }
+
+    /**
+     * Reads and closes the given stream, returns null for a null stream or if it could not be
+     * read.
+     */
+    private static byte[] readFully(InputStream in) {
+        if (in == null) return null;
+        try {
+            ByteArrayOutputStream out = new ByteArrayOutputStream(16 * 1024);
+            byte[] buffer = new byte[16 * 1024];
+            int count;
+            while ((count = in.read(buffer)) != -1) {
+                out.write(buffer, 0, count);
+            }
+            return out.toByteArray();
+        } catch (IOException e) {
+            return null;
+        } finally {
+            closeQuietly(in);
+        }
+    }
+
+    private static void closeQuietly(InputStream in) {
+        try {
+            in.close();
+        } catch (IOException e) {
+            // Ignore
+        }
+    }
+
+    /**
+     * Delivers a decoded thumbnail, unless the request has been cancelled or replaced.
+     */
+    void onThumbnailDecoded(Request request, Bitmap thumbnail, boolean preview,
+                            ThumbnailCache cache) {
+        if (preview) {
+            onPreviewDecoded(request, thumbnail);
+            return;
+        }
+        if (request.viewRef == null) {
+            // A prefetch, the thumbnail stays in the cache
+            if (mPrefetches.get(request.item) == request) {
+                mPrefetches.remove(request.item);
+            }
+            if (thumbnail != null && cache != null) {
+                cache.release(thumbnail);
+            }
+            return;
+        }
+        if (thumbnail == null) return;
+        DeckChildView<T> dcv = request.viewRef.get();
+        if (request.cancelled || dcv == null || mRequests.get(dcv) != request) {
+            if (cache != null) {
+                cache.release(thumbnail);
+            }
+            return;
+        }
+        mRequests.remove(dcv);
+        deliverThumbnail(dcv, request.item, thumbnail, cache);
+    }
+
+    /**
+     * Delivers a decoded preview, unless the request has been cancelled or replaced, and then
+     * queues the request for the full thumbnail, or parks it if the view does not want it yet.
+     */
+    private void onPreviewDecoded(Request request, Bitmap preview) {
+        DeckChildView<T> dcv = request.viewRef.get();
+        if (request.cancelled || dcv == null || mRequests.get(dcv) != request) return;
+        if (preview != null) {
+            deliverPreview(dcv, request.item, preview);
+        }
+        request.stage = Request.STAGE_FULL;
+        if (request.upgrade) {
+            enqueue(request);
+        } else {
+            park(request);
+        }
+    }
+
+    /**
+     * Keeps the request of a view that does not want its full thumbnail yet, without the encoded
+     * thumbnail, until {@link #setUpgradeWanted} queues it again.
+     */
+    private void park(Request request) {
+        request.parked = true;
+        request.takeData();
+    }
+
+    /**
+     * Delivers a preview to the view, and releases the thumbnail that was delivered to the view
+     * before.  Previews are not acquired, they are never decoded into again.
+     */
+    private void deliverPreview(DeckChildView<T> dcv, T item, Bitmap preview) {
+        if (!dcv.onThumbnailLoaded(item, preview)) return;
+        Bitmap prevThumbnail = mBoundThumbnails.remove(dcv);
+        ThumbnailCache cache = mCache;
+        if (prevThumbnail != null && cache != null) {
+            cache.release(prevThumbnail);
+        }
+    }
+
+    /**
+     * Delivers a thumbnail, acquired from the given cache, to the view, and releases the one that
+     * was delivered to the view before.
+     */
+    private void deliverThumbnail(DeckChildView<T> dcv, T item, Bitmap thumbnail,
+                                  ThumbnailCache cache) {
+        // The view checks that it is still bound to the item
+        if (!dcv.onThumbnailLoaded(item, thumbnail)) {
+            if (cache != null) {
+                cache.release(thumbnail);
+            }
+            return;
+        }
+        Bitmap prevThumbnail = mBoundThumbnails.put(dcv, thumbnail);
+        if (prevThumbnail != null && cache != null) {
+            cache.release(prevThumbnail);
+        }
+    }
+
+    class Request implements Runnable, Comparable<Request> {
+        static final int STAGE_PREVIEW = 0;
+        static final int STAGE_FULL = 1;
+
+        // The view to deliver the thumbnail to, null for a prefetch
+        final WeakReference<DeckChildView<T>> viewRef;
+        final T item;
+        final int width;
+        final int height;
+        final long sequence;
+        // Only changed while the request is out of the queue
+        float priority;
+        int stage = STAGE_FULL;
+        // Read by the decoding thread to skip the requests that were cancelled while queued
+        volatile boolean cancelled;
+        // Whether the full thumbnail is wanted after the preview, and whether the request waits
+        // for it to be wanted
+        boolean upgrade = true;
+        boolean parked;
+        // The encoded thumbnail that the preview was decoded from, kept for the full thumbnail.
+        // Set and taken on the decoding threads and dropped on the main thread, guarded by
+        // mQueue like the queue itself.
+        private byte[] data;
+        private boolean dataFromDiskCache;
+
+        Request(DeckChildView<T> dcv, T item, int width, int height, float priority) {
+            this.viewRef = dcv != null ? new WeakReference<>(dcv) : null;
+            this.item = item;
+            this.width = width;
+            this.height = height;
+            this.priority = roundPriority(priority);
+            this.sequence = mRequestCount++;
+        }
+
+        /**
+         * Keeps the encoded thumbnail that the preview was decoded from, and whether it was read
+         * from the disk cache.
+         */
+        void setData(byte[] data, boolean fromDiskCache) {
+            synchronized (mQueue) {
+                this.data = data;
+                this.dataFromDiskCache = fromDiskCache;
+            }
+        }
+
+        /**
+         * Returns the kept encoded thumbnail, or null, and drops it from the request.
+         */
+        byte[] takeData() {
+            synchronized (mQueue) {
+                byte[] data = this.data;
+                this.data = null;
+                return data;
+            }
+        }
+
+        boolean isDataFromDiskCache() {
+            synchronized (mQueue) {
+                return dataFromDiskCache;
+            }
+        }
+
+        void cancel() {
+            cancelled = true;
+            // Drop it from the queue if it has not started yet
+            dequeue(this);
+        }
+
+        @Override
+        public int compareTo(Request other) {
+            // Requests of views first, previews before full thumbnails, then by priority, then
+            // in the order they were made
+            if ((viewRef == null) != (other.viewRef == null)) {
+                return viewRef == null ? 1 : -1;
+            }
+            if (stage != other.stage) {
+                return stage < other.stage ? -1 : 1;
+            }
+            int result = Float.compare(other.priority, priority);
+            if (result != 0) {
+                return result;
+            }
+            return sequence < other.sequence ? -1 : (sequence > other.sequence ? 1 : 0);
+        }
+
+        @Override
+        public void run() {
+            if (cancelled) return;
+            final ThumbnailCache cache = mCache;
+            // A prefetch may have cached the thumbnail since the request was queued
+            Bitmap cached = cache != null ? cache.getAndAcquire(item) : null;
+            final boolean preview = cached == null && stage == STAGE_PREVIEW;
+            final Bitmap thumbnail;
+            if (cached != null) {
+                thumbnail = cached;
+                takeData();
+            } else if (preview) {
+                thumbnail = loadPreview(this);
+                ThumbnailCache previewCache = mPreviewCache;
+                if (thumbnail != null && previewCache != null) {
+                    previewCache.put(item, thumbnail);
+                }
+            } else {
+                Bitmap decoded = loadFull(this);
+                thumbnail = decoded != null && isHardwareBitmaps() ?
+                        toHardwareBitmap(decoded, cache != null ? cache.getBitmapPool() : null) :
+                        decoded;
+                // Cache the thumbnail even if the request was cancelled in the meantime, the
+                // card may well be scrolled back in.  It is in use until it has been delivered.
+                if (thumbnail != null && cache != null) {
+                    cache.acquire(thumbnail);
+                    cache.put(item, thumbnail);
+                }
+            }
+            mMainHandler.post(new Runnable() {
+                @Override
+                public void run() {
+                    onThumbnailDecoded(Request.this, thumbnail, preview, cache);
+                }
+            });
+        }
+    }
+
+    /**
+     * Creates the decoding threads, at background priority so that they do not compete with the
+     * main thread.
+     */
+    static class BackgroundThreadFactory implements ThreadFactory {
+        private final AtomicInteger mCount = new AtomicInteger();
+
+        @Override
+        public Thread newThread(final Runnable r) {
+            return new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    Process.setThreadPriority(Process.THREAD_PRIORITY_BACKGROUND);
+                    r.run();
+                }
+            }, "ThumbnailLoader #" + mCount.incrementAndGet());
+        }
+    }
+}
@@ -0,0 +1,187 @@
+package com.appeaser.deckview.utilities;
+
+import android.graphics.Bitmap;
+import android.os.Build;
+
+import java.util.ArrayList;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * A pool of mutable bitmaps that are no longer used, so that thumbnails can be decoded into them
+ * with BitmapFactory.Options.inBitmap instead of allocating new ones.  The bitmaps are bucketed
+ * by their allocation size, and the pool is bounded by the total number of bytes, dropping the
+ * largest bitmaps first.  The pool is thread safe, and keeps hit and miss counts.
+ * <p>
+ * Decoding into a bitmap of another size needs KitKat or later, before that only bitmaps of the
+ * exact size are handed out.
+ */
+public class BitmapPool {
+
+    // Reusing a bitmap more than this many times the requested size wastes more than it saves
+    private static final int MAX_SIZE_MULTIPLE = 2;
+
+    private final long mMaxBytes;
+    private final TreeMap<Long, ArrayList<Bitmap>> mBuckets = new TreeMap<>();
+    private long mSize;
+    private int mHitCount;
+    private int mMissCount;
+    private int mPutCount;
+    private int mEvictionCount;
+
+    /**
+     * @param maxBytes the maximum number of bytes of the pooled bitmaps
+     */
+    public BitmapPool(long maxBytes) {
+        mMaxBytes = maxBytes;
+    }
+
+    /**
+     * Returns a bitmap with the given size and config, with undefined contents, or null if the
+     * pool has none that fits.
+     */
+    public synchronized Bitmap get(int width, int height, Bitmap.Config config) {
+        long byteCount = getByteCount(width, height, config);
+        boolean canReconfigure = Build.VERSION.SDK_INT >= Build.VERSION_CODES.KITKAT;
+        Map.Entry<Long, ArrayList<Bitmap>> bucket = mBuckets.ceilingEntry(byteCount);
+        while (bucket != null && bucket.getKey() <= byteCount * MAX_SIZE_MULTIPLE) {
+            ArrayList<Bitmap> bitmaps = bucket.getValue();
+            for (int i = bitmaps.size() - 1; i >= 0; i--) {
+                Bitmap bitmap = bitmaps.get(i);
+                boolean sameSize = bitmap.getWidth() == width && bitmap.getHeight() == height
+                        && bitmap.getConfig() == config;
+                if (sameSize || canReconfigure) {
+                    removeFromBucket(bucket.getKey(), i);
+                    if (!sameSize) {
+                        bitmap.reconfigure(width, height, config);
+                    }
+                    mHitCount++;
+                    return bitmap;
+                }
+            }
+            bucket = mBuckets.higherEntry(bucket.getKey());
+        }
+        mMissCount++;
+        return null;
+    }
+
+    /**
+     * Returns a bitmap that an image of the given size can be decoded into with inBitmap, or null
+     * if the pool has none.  The decoder reconfigures the bitmap.
+     */
+    public Bitmap getForDecode(int width, int height, Bitmap.Config config) {
+        if (Build.VERSION.SDK_INT < Build.VERSION_CODES.KITKAT) {
+            // Before KitKat, inBitmap also requires an inSampleSize of 1
+            return get(width, height, config);
+        }
+        synchronized (this) {
+            long byteCount = getByteCount(width, height, config);
+            Map.Entry<Long, ArrayList<Bitmap>> bucket = mBuckets.ceilingEntry(byteCount);
+            if (bucket != null && bucket.getKey() <= byteCount * MAX_SIZE_MULTIPLE) {
+                ArrayList<Bitmap> bitmaps = bucket.getValue();
+                Bitmap bitmap = bitmaps.get(bitmaps.size() - 1);
+                removeFromBucket(bucket.getKey(), bitmaps.size() - 1);
+                mHitCount++;
+                return bitmap;
+            }
+            mMissCount++;
+            return null;
+        }
+    }
+
+    /**
+     * Adds a bitmap that is no longer used by anything to the pool.  Immutable and recycled
+     * bitmaps are ignored.
+     */
+    public synchronized void put(Bitmap bitmap) {
+        if (bitmap == null || bitmap.isRecycled() || !bitmap.isMutable()) return;
+        long byteCount = DVUtils.getBitmapByteCount(bitmap);
+        if (byteCount > mMaxBytes) return;
+        ArrayList<Bitmap> bitmaps = mBuckets.get(byteCount);
+        if (bitmaps == null) {
+            bitmaps = new ArrayList<>();
+            mBuckets.put(byteCount, bitmaps);
+        }
+        bitmaps.add(bitmap);
+        mSize += byteCount;
+        mPutCount++;
+        trimToSize(mMaxBytes);
+    }
+
+    /**
+     * Drops the largest bitmaps until the pooled bitmaps take at most maxBytes.
+     */
+    public synchronized void trimToSize(long maxBytes) {
+        while (mSize > maxBytes && !mBuckets.isEmpty()) {
+            long byteCount = mBuckets.lastKey();
+            removeFromBucket(byteCount, mBuckets.get(byteCount).size() - 1);
+            mEvictionCount++;
+        }
+    }
+
+    /**
+     * Drops all the pooled bitmaps.
+     */
+    public void clear() {
+        trimToSize(0);
+    }
+
+    /**
+     * Returns the number of bytes of the pooled bitmaps.
+     */
+    public synchronized long size() {
+        return mSize;
+    }
+
+    public synchronized int hitCount() {
+        return mHitCount;
+    }
+
+    public synchronized int missCount() {
+        return mMissCount;
+    }
+
+    public synchronized int putCount() {
+        return mPutCount;
+    }
+
+    public synchronized int evictionCount() {
+        return mEvictionCount;
+    }
+
+    /**
+     * Returns the share of the requests that were served from the pool, 0 if there was none.
+     */
+    public synchronized float getHitRate() {
+        int requests = mHitCount + mMissCount;
+        return requests > 0 ? (float) mHitCount / requests : 0f;
+    }
+
+    @Override
+    public synchronized String toString() {
+        return "BitmapPool[size=" + mSize + ",maxSize=" + mMaxBytes + ",hits=" + mHitCount
+                + ",misses=" + mMissCount + ",hitRate=" + Math.round(getHitRate() * 100)
+                + "%,puts=" + mPutCount + ",evictions=" + mEvictionCount + "]";
+    }
+
+    private void removeFromBucket(long byteCount, int index) {
+        ArrayList<Bitmap> bitmaps = mBuckets.get(byteCount);
+        bitmaps.remove(index);
+        if (bitmaps.isEmpty()) {
+            mBuckets.remove(byteCount);
+        }
+        mSize -= byteCount;
+    }
+
+    private static long getByteCount(int width, int height, Bitmap.Config config) {
+        int bytesPerPixel;
+        if (config == Bitmap.Config.ALPHA_8) {
+            bytesPerPixel = 1;
+        } else if (config == Bitmap.Config.RGB_565 || config == Bitmap.Config.ARGB_4444) {
+            bytesPerPixel = 2;
+        } else {
+            bytesPerPixel = 4;
+        }
+        return (long) width * height * bytesPerPixel;
+    }
+}
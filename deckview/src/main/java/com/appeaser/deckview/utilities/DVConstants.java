@@ -17,6 +17,8 @@ public class DVConstants {
             public static final boolean EnableTaskBarTouchEvents = true;
             // Enables app-info pane on long-pressing the icon
             public static final boolean EnableDevAppInfoOnLongPress = true;
+            // Logs the average time it takes to create a card view
+            public static final boolean EnableChildViewCreationTiming = false;
         }
     }
 
@@ -1,10 +1,12 @@
 package com.appeaser.deckview.utilities;
 
 import android.animation.Animator;
+import android.graphics.Bitmap;
 import android.graphics.Color;
 import android.graphics.Matrix;
 import android.graphics.Rect;
 import android.graphics.RectF;
+import android.os.Build;
 import android.view.View;
 
 import com.appeaser.deckview.helpers.DeckViewConfig;
@@ -195,6 +197,19 @@ public class DVUtils {
         }
     }
 
+    /**
+     * Returns the number of bytes allocated for the pixels of the bitmap, 0 for null.
+     */
+    public static long getBitmapByteCount(Bitmap bitmap) {
+        if (bitmap == null) {
+            return 0;
+        }
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.KITKAT) {
+            return bitmap.getAllocationByteCount();
+        }
+        return bitmap.getByteCount();
+    }
+
     private static Matrix IDENTITY_MATRIX = new Matrix() {
         void oops() {
             throw new IllegalStateException("Matrix can not be modified");
@@ -0,0 +1,139 @@
+package com.appeaser.deckview.utilities;
+
+import android.graphics.Bitmap;
+import android.util.LruCache;
+
+import java.util.HashMap;
+import java.util.HashSet;
+
+/**
+ * A memory cache of decoded thumbnails, keyed by item and bounded by the number of bytes
+ * allocated for the bitmaps.  The least recently used thumbnails are evicted first.  The cache is
+ * thread safe, and keeps hit, miss and eviction counts (see {@link #hitCount()},
+ * {@link #missCount()} and {@link #evictionCount()}).
+ * <p>
+ * With a {@link BitmapPool}, thumbnails that are neither cached nor in use any more go to the
+ * pool to be decoded into again.  Users of the thumbnails mark them with {@link #acquire} and
+ * {@link #release}, a thumbnail that is evicted while in use goes to the pool once it is
+ * released.
+ */
+public class ThumbnailCache extends LruCache<Object, Bitmap> {
+
+    // The shares of the heap used by the default cache and its bitmap pool
+    private static final int DEFAULT_HEAP_DIVISOR = 8;
+    private static final int DEFAULT_POOL_HEAP_DIVISOR = 32;
+
+    // Guards the use counts, separately from the lock of the LruCache, which is not held while
+    // entries are removed
+    private final Object mUseLock = new Object();
+    private final HashMap<Bitmap, Integer> mUseCounts = new HashMap<>();
+    // The thumbnails that were removed from the cache while they were in use
+    private final HashSet<Bitmap> mRemovedInUse = new HashSet<>();
+    private volatile BitmapPool mBitmapPool;
+
+    /**
+     * Returns a cache bounded by an eighth of the maximum heap size, with a bitmap pool bounded
+     * by a 32nd of it.
+     */
+    public static ThumbnailCache createDefault() {
+        long maxMemory = Runtime.getRuntime().maxMemory();
+        ThumbnailCache cache = new ThumbnailCache((int) Math.min(Integer.MAX_VALUE,
+                maxMemory / DEFAULT_HEAP_DIVISOR));
+        cache.setBitmapPool(new BitmapPool(maxMemory / DEFAULT_POOL_HEAP_DIVISOR));
+        return cache;
+    }
+
+    /**
+     * @param maxBytes the maximum number of bytes of the cached bitmaps
+     */
+    public ThumbnailCache(int maxBytes) {
+        super(maxBytes);
+    }
+
+    /**
+     * Sets the pool that the thumbnails go to once they are neither cached nor in use, or null to
+     * drop them.
+     */
+    public void setBitmapPool(BitmapPool bitmapPool) {
+        mBitmapPool = bitmapPool;
+    }
+
+    public BitmapPool getBitmapPool() {
+        return mBitmapPool;
+    }
+
+    /**
+     * Returns the cached thumbnail of the given item, marked as in use, or null if there is none.
+     */
+    public Bitmap getAndAcquire(Object key) {
+        synchronized (mUseLock) {
+            // Holding the use lock, the thumbnail can not go to the pool before it is acquired
+            Bitmap thumbnail = get(key);
+            if (thumbnail != null) {
+                acquire(thumbnail);
+            }
+            return thumbnail;
+        }
+    }
+
+    /**
+     * Marks the given thumbnail as in use, so that it does not go to the pool when it is evicted.
+     * A thumbnail has to be acquired before it is put into the cache.
+     */
+    public void acquire(Bitmap thumbnail) {
+        synchronized (mUseLock) {
+            Integer count = mUseCounts.get(thumbnail);
+            mUseCounts.put(thumbnail, count != null ? count + 1 : 1);
+        }
+    }
+
+    /**
+     * Marks the given thumbnail as no longer used by one of its users.  If it was the last one,
+     * and the thumbnail is no longer cached, it goes to the pool.
+     */
+    public void release(Bitmap thumbnail) {
+        synchronized (mUseLock) {
+            Integer count = mUseCounts.get(thumbnail);
+            if (count == null) return;
+            if (count > 1) {
+                mUseCounts.put(thumbnail, count - 1);
+                return;
+            }
+            mUseCounts.remove(thumbnail);
+            if (!mRemovedInUse.remove(thumbnail)) return;
+        }
+        recycleThumbnail(thumbnail);
+    }
+
+    @Override
+    protected void entryRemoved(boolean evicted, Object key, Bitmap oldValue, Bitmap newValue) {
+        if (oldValue == newValue) return;
+        synchronized (mUseLock) {
+            if (mUseCounts.containsKey(oldValue)) {
+                mRemovedInUse.add(oldValue);
+                return;
+            }
+        }
+        recycleThumbnail(oldValue);
+    }
+
+    private void recycleThumbnail(Bitmap thumbnail) {
+        BitmapPool bitmapPool = mBitmapPool;
+        if (bitmapPool != null) {
+            bitmapPool.put(thumbnail);
+        }
+    }
+
+    @Override
+    protected int sizeOf(Object key, Bitmap thumbnail) {
+        return (int) DVUtils.getBitmapByteCount(thumbnail);
+    }
+
+    /**
+     * Returns the share of the lookups that were hits, 0 if there was none.
+     */
+    public synchronized float getHitRate() {
+        int lookups = hitCount() + missCount();
+        return lookups > 0 ? (float) hitCount() / lookups : 0f;
+    }
+}
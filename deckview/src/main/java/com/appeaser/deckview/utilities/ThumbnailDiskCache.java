@@ -0,0 +1,337 @@
+package com.appeaser.deckview.utilities;
+
+import android.graphics.Bitmap;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileNotFoundException;
+import java.io.FileOutputStream;
+import java.io.FileReader;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.Writer;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * A disk cache of thumbnails that are already scaled to the size of the cards, so that a deck
+ * can be filled from local storage after a process restart instead of fetching and decoding
+ * the full size images again.  Entries are keyed by a stable id of the item and a size bucket,
+ * and are stored as WebP files.  The least recently used entries are evicted once the files
+ * take more than the maximum number of bytes.
+ * <p>
+ * The entries are recorded in an append-only journal, which is replayed when the cache is first
+ * used and compacted when it grows too long.  The cache does its I/O on the calling thread, so
+ * it must only be used from background threads.  It is thread safe.
+ */
+public class ThumbnailDiskCache {
+
+    // Card sizes are rounded up to a multiple of this many pixels, so that small changes of the
+    // card size, for example with the system insets, still hit the same entries
+    static final int SIZE_BUCKET_STEP = 64;
+
+    private static final String JOURNAL_FILE = "journal";
+    private static final String JOURNAL_FILE_TMP = "journal.tmp";
+    private static final String JOURNAL_HEADER = "deckview.thumbnails 1";
+    private static final String PUT = "P";
+    private static final String READ = "R";
+    private static final String DELETE = "D";
+    private static final String ENTRY_SUFFIX = ".webp";
+    private static final String TMP_SUFFIX = ".tmp";
+    private static final int COMPRESS_QUALITY = 85;
+    // The journal is compacted once it has this many more lines than there are entries
+    private static final int MAX_REDUNDANT_JOURNAL_LINES = 2000;
+
+    private final File mDirectory;
+    private final long mMaxBytes;
+
+    // The size of each entry by key, in access order
+    private final LinkedHashMap<String, Long> mEntries = new LinkedHashMap<>(0, 0.75f, true);
+    private long mSize;
+    private Writer mJournalWriter;
+    private int mRedundantJournalLines;
+    private boolean mOpened;
+
+    /**
+     * @param directory the directory of the cache, which should not be used for anything else
+     * @param maxBytes  the maximum number of bytes of the cached files
+     */
+    public ThumbnailDiskCache(File directory, long maxBytes) {
+        mDirectory = directory;
+        mMaxBytes = maxBytes;
+    }
+
+    /**
+     * Returns the size that thumbnails for cards of the given size are stored with.
+     */
+    public static int getBucketSize(int size) {
+        return (size + SIZE_BUCKET_STEP - 1) / SIZE_BUCKET_STEP * SIZE_BUCKET_STEP;
+    }
+
+    /**
+     * Opens the stored thumbnail of the given item for cards of the given size, or returns null
+     * if there is none.
+     */
+    public InputStream get(String id, int width, int height) {
+        String key = getKey(id, width, height);
+        synchronized (this) {
+            if (!ensureOpened() || mEntries.get(key) == null) {
+                return null;
+            }
+            appendToJournal(READ, key, -1);
+        }
+        try {
+            return new FileInputStream(getEntryFile(key));
+        } catch (FileNotFoundException e) {
+            // The entry was evicted in the meantime, or the file was deleted
+            return null;
+        }
+    }
+
+    /**
+     * Stores the thumbnail of the given item for cards of the given size, replacing any stored
+     * one.  The thumbnail should already be scaled to the card size.
+     */
+    public void put(String id, int width, int height, Bitmap thumbnail) {
+        String key = getKey(id, width, height);
+        synchronized (this) {
+            if (!ensureOpened()) return;
+        }
+
+        // Compress outside of the lock, to a file of its own for each thread
+        File tmpFile = new File(mDirectory, key + "." + Thread.currentThread().getId()
+                + TMP_SUFFIX);
+        OutputStream out = null;
+        boolean written = false;
+        try {
+            out = new FileOutputStream(tmpFile);
+            written = thumbnail.compress(Bitmap.CompressFormat.WEBP, COMPRESS_QUALITY, out);
+        } catch (IOException e) {
+            // Not stored
+        } finally {
+            if (out != null) {
+                try {
+                    out.close();
+                } catch (IOException e) {
+                    written = false;
+                }
+            }
+        }
+
+        synchronized (this) {
+            if (!written || !mOpened || !tmpFile.renameTo(getEntryFile(key))) {
+                tmpFile.delete();
+                return;
+            }
+            long size = getEntryFile(key).length();
+            Long prevSize = mEntries.put(key, size);
+            if (prevSize != null) {
+                mSize -= prevSize;
+                mRedundantJournalLines++;
+            }
+            mSize += size;
+            appendToJournal(PUT, key, size);
+            trimToSize(mMaxBytes);
+        }
+    }
+
+    /**
+     * Deletes all the stored thumbnails.
+     */
+    public synchronized void clear() {
+        if (!ensureOpened()) return;
+        trimToSize(0);
+        rebuildJournal();
+    }
+
+    /**
+     * Returns the number of bytes of the stored thumbnails.
+     */
+    public synchronized long size() {
+        return mOpened ? mSize : 0;
+    }
+
+    private String getKey(String id, int width, int height) {
+        return hash(id) + "_" + getBucketSize(width) + "x" + getBucketSize(height);
+    }
+
+    private File getEntryFile(String key) {
+        return new File(mDirectory, key + ENTRY_SUFFIX);
+    }
+
+    /**
+     * Evicts the least recently used entries until the files take at most maxBytes.
+     */
+    private void trimToSize(long maxBytes) {
+        Iterator<Map.Entry<String, Long>> it = mEntries.entrySet().iterator();
+        while (mSize > maxBytes && it.hasNext()) {
+            Map.Entry<String, Long> entry = it.next();
+            getEntryFile(entry.getKey()).delete();
+            mSize -= entry.getValue();
+            it.remove();
+            appendToJournal(DELETE, entry.getKey(), -1);
+        }
+    }
+
+    /**
+     * Opens the cache on first use, replaying the journal and deleting the files that are not
+     * in it.  Returns false if the cache directory can not be used.
+     */
+    private boolean ensureOpened() {
+        if (mOpened) return true;
+        if (!mDirectory.isDirectory() && !mDirectory.mkdirs()) {
+            return false;
+        }
+        mEntries.clear();
+        mSize = 0;
+        readJournal();
+
+        // Drop the entries whose file is gone, and the files that are not entries, such as
+        // thumbnails that were being written when the process died
+        Iterator<Map.Entry<String, Long>> it = mEntries.entrySet().iterator();
+        while (it.hasNext()) {
+            Map.Entry<String, Long> entry = it.next();
+            if (getEntryFile(entry.getKey()).length() != entry.getValue()) {
+                getEntryFile(entry.getKey()).delete();
+                it.remove();
+            } else {
+                mSize += entry.getValue();
+            }
+        }
+        File[] files = mDirectory.listFiles();
+        if (files != null) {
+            for (File file : files) {
+                String name = file.getName();
+                if (name.equals(JOURNAL_FILE)) continue;
+                if (!name.endsWith(ENTRY_SUFFIX) || !mEntries.containsKey(
+                        name.substring(0, name.length() - ENTRY_SUFFIX.length()))) {
+                    file.delete();
+                }
+            }
+        }
+
+        mOpened = rebuildJournal();
+        if (mOpened) {
+            trimToSize(mMaxBytes);
+        }
+        return mOpened;
+    }
+
+    private void readJournal() {
+        File journal = new File(mDirectory, JOURNAL_FILE);
+        if (!journal.exists()) return;
+        BufferedReader reader = null;
+        try {
+            reader = new BufferedReader(new FileReader(journal));
+            if (!JOURNAL_HEADER.equals(reader.readLine())) {
+                // Unknown format, start over
+                return;
+            }
+            String line;
+            while ((line = reader.readLine()) != null) {
+                String[] parts = line.split(" ");
+                if (parts.length < 2) continue;
+                if (PUT.equals(parts[0]) && parts.length == 3) {
+                    try {
+                        mEntries.put(parts[1], Long.parseLong(parts[2]));
+                    } catch (NumberFormatException e) {
+                        // Skip the corrupt line
+                    }
+                } else if (READ.equals(parts[0])) {
+                    // Touch the entry to restore the access order
+                    mEntries.get(parts[1]);
+                } else if (DELETE.equals(parts[0])) {
+                    mEntries.remove(parts[1]);
+                }
+            }
+        } catch (IOException e) {
+            // Keep what could be read, a truncated last line is skipped
+        } finally {
+            if (reader != null) {
+                try {
+                    reader.close();
+                } catch (IOException e) {
+                    // Ignore
+                }
+            }
+        }
+    }
+
+    /**
+     * Replaces the journal with one that only records the current entries, in access order.
+     */
+    private boolean rebuildJournal() {
+        if (mJournalWriter != null) {
+            try {
+                mJournalWriter.close();
+            } catch (IOException e) {
+                // Ignore
+            }
+            mJournalWriter = null;
+        }
+        File tmpJournal = new File(mDirectory, JOURNAL_FILE_TMP);
+        try {
+            Writer writer = new BufferedWriter(new FileWriter(tmpJournal));
+            try {
+                writer.write(JOURNAL_HEADER + "\n");
+                for (Map.Entry<String, Long> entry : mEntries.entrySet()) {
+                    writer.write(PUT + " " + entry.getKey() + " " + entry.getValue() + "\n");
+                }
+            } finally {
+                writer.close();
+            }
+            if (!tmpJournal.renameTo(new File(mDirectory, JOURNAL_FILE))) {
+                return false;
+            }
+            mJournalWriter = new BufferedWriter(new FileWriter(
+                    new File(mDirectory, JOURNAL_FILE), true));
+            mRedundantJournalLines = 0;
+            return true;
+        } catch (IOException e) {
+            return false;
+        }
+    }
+
+    private void appendToJournal(String op, String key, long size) {
+        if (mJournalWriter == null) return;
+        try {
+            mJournalWriter.write(size >= 0 ? op + " " + key + " " + size + "\n" :
+                    op + " " + key + "\n");
+            mJournalWriter.flush();
+        } catch (IOException e) {
+            // The entries are checked against the files when the journal is replayed
+        }
+        if (!PUT.equals(op)) {
+            mRedundantJournalLines++;
+        }
+        if (mRedundantJournalLines >= MAX_REDUNDANT_JOURNAL_LINES
+                && mRedundantJournalLines >= mEntries.size()) {
+            rebuildJournal();
+        }
+    }
+
+    /**
+     * Returns a file name safe hash of the given id.
+     */
+    private static String hash(String id) {
+        try {
+            byte[] digest = MessageDigest.getInstance("SHA-1").digest(id.getBytes("UTF-8"));
+            StringBuilder sb = new StringBuilder(digest.length * 2);
+            for (byte b : digest) {
+                sb.append(Character.forDigit((b >> 4) & 0xf, 16));
+                sb.append(Character.forDigit(b & 0xf, 16));
+            }
+            return sb.toString();
+        } catch (NoSuchAlgorithmException | IOException e) {
+            // Both are always supported
+            throw new IllegalStateException(e);
+        }
+    }
+}
@@ -67,7 +67,7 @@ class AnimateableDeckChildViewBounds extends ViewOutlineProvider {
     /**
      * Returns the bottom clip.
      */
-    private int getClipBottom() {
+    int getClipBottom() {
         return mClipRect.bottom;
     }
 
@@ -60,6 +60,8 @@ public class DeckChildView<T> extends FrameLayout implements
     Paint mDimLayerPaint = new Paint();
 
     T mKey;
+    int mPosition = -1;
+    long mItemId = DeckView.Adapter.NO_ID;
     boolean mTaskDataLoaded;
     boolean mIsFocused;
     boolean mFocusAnimationsEnabled;
@@ -131,6 +133,27 @@ public class DeckChildView<T> extends FrameLayout implements
         return mKey;
     }
 
+    /**
+     * Gets the adapter position of the task
+     */
+    int getAttachedPosition() {
+        return mPosition;
+    }
+
+    /**
+     * Sets the adapter position of the task, when the task itself has moved
+     */
+    void setAttachedPosition(int position) {
+        mPosition = position;
+    }
+
+    /**
+     * Gets the stable id of the task
+     */
+    long getAttachedItemId() {
+        return mItemId;
+    }
+
     /**
      * Returns the view bounds.
      */
@@ -140,10 +163,18 @@ public class DeckChildView<T> extends FrameLayout implements
 
     @Override
     protected void onFinishInflate() {
-        // Bind the views
-        mContent = findViewById(R.id.task_view_content);
-        mHeaderView = (DeckChildViewHeader) findViewById(R.id.task_view_bar);
-        mThumbnailView = (DeckChildViewThumbnail) findViewById(R.id.task_view_thumbnail);
+        bindViews(findViewById(R.id.task_view_content),
+                (DeckChildViewHeader) findViewById(R.id.task_view_bar),
+                (DeckChildViewThumbnail) findViewById(R.id.task_view_thumbnail));
+    }
+
+    /**
+     * Binds the child views, once they have been inflated or built by DeckChildViewFactory.
+     */
+    void bindViews(View content, DeckChildViewHeader header, DeckChildViewThumbnail thumbnail) {
+        mContent = content;
+        mHeaderView = header;
+        mThumbnailView = thumbnail;
         mThumbnailView.updateClipToTaskBar(mHeaderView);
     }
 
@@ -605,6 +636,15 @@ public class DeckChildView<T> extends FrameLayout implements
         mKey = key;
     }
 
+    /**
+     * Binds this task view to the task at the given adapter position
+     */
+    void onTaskBound(T key, int position, long itemId) {
+        onTaskBound(key);
+        mPosition = position;
+        mItemId = itemId;
+    }
+
     private boolean isBound() {
         return mKey != null;
     }
@@ -614,6 +654,8 @@ public class DeckChildView<T> extends FrameLayout implements
      */
     public void onTaskUnbound() {
         mKey = null;
+        mPosition = -1;
+        mItemId = DeckView.Adapter.NO_ID;
     }
 
     public Bitmap getThumbnail() {
@@ -624,6 +666,10 @@ public class DeckChildView<T> extends FrameLayout implements
         return null;
     }
 
+    /**
+     * Binds the data of the task to the views.  A null thumbnail keeps the current one, so that
+     * the header can be bound separately from a thumbnail delivered by a ThumbnailLoader.
+     */
     public void onDataLoaded(T key, Bitmap thumbnail, Drawable headerIcon,
                              String headerTitle, int headerBgColor) {
         if (!isBound() || !mKey.equals(key))
@@ -631,7 +677,9 @@ public class DeckChildView<T> extends FrameLayout implements
 
         if (mThumbnailView != null && mHeaderView != null) {
             // Bind each of the views to the new task data
-            mThumbnailView.rebindToTask(thumbnail);
+            if (thumbnail != null) {
+                mThumbnailView.rebindToTask(thumbnail);
+            }
             mHeaderView.rebindToTask(headerIcon, headerTitle, headerBgColor);
             // Rebind any listeners
             mHeaderView.mApplicationIcon.setOnClickListener(this);
@@ -643,6 +691,20 @@ public class DeckChildView<T> extends FrameLayout implements
         mTaskDataLoaded = true;
     }
 
+    /**
+     * Binds the thumbnail of the task, unless the view has been bound to another task since it
+     * was requested.  Returns whether the thumbnail was bound.
+     */
+    public boolean onThumbnailLoaded(T key, Bitmap thumbnail) {
+        if (!isBound() || !mKey.equals(key))
+            return false;
+
+        if (mThumbnailView != null) {
+            mThumbnailView.rebindToTask(thumbnail);
+        }
+        return true;
+    }
+
     public void onDataUnloaded() {
         if (mThumbnailView != null && mHeaderView != null) {
             // Unbind each of the views from the task data and remove the task callback
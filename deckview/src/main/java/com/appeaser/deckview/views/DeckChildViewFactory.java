@@ -0,0 +1,111 @@
+package com.appeaser.deckview.views;
+
+import android.content.Context;
+import android.content.res.Resources;
+import android.graphics.Typeface;
+import android.text.TextUtils;
+import android.util.TypedValue;
+import android.view.Gravity;
+import android.view.View;
+import android.view.ViewGroup;
+import android.widget.FrameLayout;
+import android.widget.TextView;
+
+import com.appeaser.deckview.R;
+
+/**
+ * Builds the DeckChildView hierarchy of deck_child_view.xml and deck_child_view_header.xml in
+ * code, which skips parsing the layouts and resolving the view classes by reflection.  Any
+ * change to the layouts has to be mirrored here.
+ */
+class DeckChildViewFactory {
+
+    /**
+     * Returns a new DeckChildView, equivalent to an inflated one.
+     */
+    static DeckChildView create(Context context) {
+        Resources res = context.getResources();
+
+        DeckChildView tv = new DeckChildView(context);
+        tv.setLayoutParams(new FrameLayout.LayoutParams(ViewGroup.LayoutParams.MATCH_PARENT,
+                ViewGroup.LayoutParams.MATCH_PARENT));
+        tv.setFocusable(true);
+
+        FrameLayout content = new FrameLayout(context);
+        content.setId(R.id.task_view_content);
+        tv.addView(content, new FrameLayout.LayoutParams(ViewGroup.LayoutParams.MATCH_PARENT,
+                ViewGroup.LayoutParams.MATCH_PARENT));
+
+        DeckChildViewThumbnail thumbnail = new DeckChildViewThumbnail(context);
+        thumbnail.setId(R.id.task_view_thumbnail);
+        content.addView(thumbnail, new FrameLayout.LayoutParams(
+                ViewGroup.LayoutParams.MATCH_PARENT, ViewGroup.LayoutParams.MATCH_PARENT));
+
+        DeckChildViewHeader header = createHeader(context, res);
+        content.addView(header, new FrameLayout.LayoutParams(ViewGroup.LayoutParams.MATCH_PARENT,
+                res.getDimensionPixelSize(R.dimen.deck_child_header_bar_height),
+                Gravity.TOP | Gravity.CENTER_HORIZONTAL));
+
+        tv.bindViews(content, header, thumbnail);
+        return tv;
+    }
+
+    private static DeckChildViewHeader createHeader(Context context, Resources res) {
+        DeckChildViewHeader header = new DeckChildViewHeader(context);
+        header.setId(R.id.task_view_bar);
+
+        int iconSize = res.getDimensionPixelSize(R.dimen.task_view_application_icon_size);
+        FixedSizeImageView applicationIcon = new FixedSizeImageView(context);
+        applicationIcon.setId(R.id.application_icon);
+        int iconPadding = dpToPx(res, 8);
+        applicationIcon.setPadding(iconPadding, iconPadding, iconPadding, iconPadding);
+        applicationIcon.setBackground(context.getDrawable(R.drawable.deck_child_view_button_bg));
+        FrameLayout.LayoutParams iconLp = new FrameLayout.LayoutParams(iconSize, iconSize,
+                Gravity.CENTER_VERTICAL | Gravity.START);
+        iconLp.setMarginStart(dpToPx(res, 8));
+        header.addView(applicationIcon, iconLp);
+
+        TextView activityDescription = new TextView(context);
+        activityDescription.setId(R.id.activity_description);
+        activityDescription.setTextSize(TypedValue.COMPLEX_UNIT_SP, 16);
+        activityDescription.setTextColor(0xffffffff);
+        activityDescription.setText(R.string.deck_view_empty_message);
+        activityDescription.setTypeface(Typeface.create("sans-serif-medium", Typeface.NORMAL));
+        // As when inflated, singleLine wins over maxLines.  android:fadingEdge is ignored by
+        // the framework since ICS, so the fading edge is not enabled either.
+        activityDescription.setMaxLines(2);
+        activityDescription.setSingleLine(true);
+        activityDescription.setEllipsize(TextUtils.TruncateAt.MARQUEE);
+        FrameLayout.LayoutParams descriptionLp = new FrameLayout.LayoutParams(
+                ViewGroup.LayoutParams.MATCH_PARENT, ViewGroup.LayoutParams.WRAP_CONTENT,
+                Gravity.CENTER_VERTICAL | Gravity.START);
+        descriptionLp.setMarginStart(dpToPx(res, 64));
+        descriptionLp.setMarginEnd(dpToPx(res, 64));
+        header.addView(activityDescription, descriptionLp);
+
+        FixedSizeImageView dismissButton = new FixedSizeImageView(context);
+        dismissButton.setId(R.id.dismiss_task);
+        int dismissPadding = dpToPx(res, 12);
+        dismissButton.setPadding(dismissPadding, dismissPadding, dismissPadding, dismissPadding);
+        dismissButton.setBackground(context.getDrawable(R.drawable.deck_child_view_button_bg));
+        dismissButton.setVisibility(View.INVISIBLE);
+        dismissButton.setImageDrawable(
+                context.getDrawable(R.drawable.deck_child_view_dismiss_light));
+        int dismissSize = dpToPx(res, 48);
+        FrameLayout.LayoutParams dismissLp = new FrameLayout.LayoutParams(dismissSize,
+                dismissSize, Gravity.CENTER_VERTICAL | Gravity.END);
+        dismissLp.setMarginEnd(dpToPx(res, 4));
+        header.addView(dismissButton, dismissLp);
+
+        header.bindViews(applicationIcon, activityDescription, dismissButton);
+        return header;
+    }
+
+    /**
+     * Converts dp to pixels the way dimension resources are, rounding to the nearest pixel.
+     */
+    private static int dpToPx(Resources res, float dp) {
+        return (int) (TypedValue.applyDimension(TypedValue.COMPLEX_UNIT_DIP, dp,
+                res.getDisplayMetrics()) + 0.5f);
+    }
+}
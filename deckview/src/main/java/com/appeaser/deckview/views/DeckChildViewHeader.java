@@ -119,10 +119,21 @@ public class DeckChildViewHeader extends FrameLayout {
 
     @Override
     protected void onFinishInflate() {
+        bindViews((ImageView) findViewById(R.id.application_icon),
+                (TextView) findViewById(R.id.activity_description),
+                (ImageView) findViewById(R.id.dismiss_task));
+    }
+
+    /**
+     * Binds the icon, description and dismiss views, once they have been inflated or built by
+     * DeckChildViewFactory, and sets up the header background.
+     */
+    void bindViews(ImageView applicationIcon, TextView activityDescription,
+                   ImageView dismissButton) {
         // Initialize the icon and description views
-        mApplicationIcon = (ImageView) findViewById(R.id.application_icon);
-        mActivityDescription = (TextView) findViewById(R.id.activity_description);
-        mDismissButton = (ImageView) findViewById(R.id.dismiss_task);
+        mApplicationIcon = applicationIcon;
+        mActivityDescription = activityDescription;
+        mDismissButton = dismissButton;
 
         // Hide the backgrounds if they are ripple drawables
         if (!DVConstants.DebugFlags.App.EnableTaskFiltering) {
@@ -10,12 +10,15 @@ import android.graphics.Canvas;
 import android.graphics.Color;
 import android.graphics.LightingColorFilter;
 import android.graphics.Matrix;
+import android.graphics.Outline;
 import android.graphics.Paint;
 import android.graphics.Rect;
 import android.graphics.RectF;
 import android.graphics.Shader;
+import android.os.Build;
 import android.util.AttributeSet;
 import android.view.View;
+import android.view.ViewOutlineProvider;
 
 import com.appeaser.deckview.helpers.DeckViewConfig;
 import com.appeaser.deckview.utilities.DVUtils;
@@ -38,6 +41,9 @@ public class DeckChildViewThumbnail extends View {
     RectF mLayoutRect = new RectF();
     BitmapShader mBitmapShader;
     LightingColorFilter mLightingColorFilter = new LightingColorFilter(0xffffffff, 0);
+    // Hardware bitmaps are drawn directly, clipped to the rounded outline of the view, instead of
+    // through a bitmap shader
+    boolean mDrawBitmapDirectly;
 
     // Thumbnail alpha
     float mThumbnailAlpha;
@@ -78,12 +84,17 @@ public class DeckChildViewThumbnail extends View {
         mDrawPaint.setColorFilter(mLightingColorFilter);
         mDrawPaint.setFilterBitmap(true);
         mDrawPaint.setAntiAlias(true);
-    }
-
-    @Override
-    protected void onFinishInflate() {
+        // Set here rather than in onFinishInflate(), which does not run for the views built by
+        // DeckChildViewFactory
         mThumbnailAlpha = mConfig.taskViewThumbnailAlpha;
         updateThumbnailPaintFilter();
+        setOutlineProvider(new ViewOutlineProvider() {
+            @Override
+            public void getOutline(View view, Outline outline) {
+                outline.setRoundRect(0, 0, getWidth(), getHeight(),
+                        mConfig.taskViewRoundedCornerRadiusPx);
+            }
+        });
     }
 
     @Override
@@ -100,6 +111,11 @@ public class DeckChildViewThumbnail extends View {
         if (mInvisible) {
             return;
         }
+        if (mDrawBitmapDirectly) {
+            // The view clips the thumbnail to its rounded outline
+            canvas.drawBitmap(mThumbnail, null, mLayoutRect, mDrawPaint);
+            return;
+        }
         // Draw the thumbnail with the rounded corners
         canvas.drawRoundRect(0, 0, getWidth(), getHeight(),
                 mConfig.taskViewRoundedCornerRadiusPx,
@@ -111,8 +127,16 @@ public class DeckChildViewThumbnail extends View {
      */
     void setThumbnail(Bitmap bm) {
         mThumbnail = bm;
+        boolean drawBitmapDirectly = bm != null && isHardwareBitmap(bm);
+        if (drawBitmapDirectly != mDrawBitmapDirectly) {
+            mDrawBitmapDirectly = drawBitmapDirectly;
+            setClipToOutline(drawBitmapDirectly);
+        }
 
-        if (bm != null) {
+        if (drawBitmapDirectly) {
+            mBitmapShader = null;
+            mDrawPaint.setShader(null);
+        } else if (bm != null) {
             mBitmapShader = new BitmapShader(bm, Shader.TileMode.CLAMP,
                     Shader.TileMode.CLAMP);
             mDrawPaint.setShader(mBitmapShader);
@@ -125,6 +149,11 @@ public class DeckChildViewThumbnail extends View {
         updateThumbnailPaintFilter();
     }
 
+    private static boolean isHardwareBitmap(Bitmap bm) {
+        return Build.VERSION.SDK_INT >= Build.VERSION_CODES.O
+                && bm.getConfig() == Bitmap.Config.HARDWARE;
+    }
+
     /**
      * Updates the paint to draw the thumbnail.
      */
@@ -134,7 +163,7 @@ public class DeckChildViewThumbnail extends View {
         }
         int mul = (int) ((1.0f - mDimAlpha) * mThumbnailAlpha * 255);
         int add = (int) ((1.0f - mDimAlpha) * (1 - mThumbnailAlpha) * 255);
-        if (mBitmapShader != null) {
+        if (mBitmapShader != null || mDrawBitmapDirectly) {
             mLightingColorFilter =
                     new LightingColorFilter(Color.argb(255, mul, mul, mul),
                             Color.argb(0, add, add, add));
@@ -152,10 +181,18 @@ public class DeckChildViewThumbnail extends View {
      * Updates the thumbnail shader's scale transform.
      */
     void updateThumbnailScale() {
-        if (mBitmapShader != null) {
-            mScaleMatrix.setRectToRect(mBitmapRect, mLayoutRect, Matrix.ScaleToFit.FILL);
-            mBitmapShader.setLocalMatrix(mScaleMatrix);
+        if (mBitmapShader == null) return;
+        if (mBitmapRect.equals(mLayoutRect)) {
+            // Thumbnails decoded at the card size are drawn unscaled, a new shader starts out
+            // with the identity matrix
+            if (!mScaleMatrix.isIdentity()) {
+                mScaleMatrix.reset();
+                mBitmapShader.setLocalMatrix(mScaleMatrix);
+            }
+            return;
         }
+        mScaleMatrix.setRectToRect(mBitmapRect, mLayoutRect, Matrix.ScaleToFit.FILL);
+        mBitmapShader.setLocalMatrix(mScaleMatrix);
     }
 
     /**
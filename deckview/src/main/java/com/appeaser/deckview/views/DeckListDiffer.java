@@ -0,0 +1,240 @@
+package com.appeaser.deckview.views;
+
+import android.os.Handler;
+import android.os.Looper;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Executors;
+
+/**
+ * Computes the removals, moves and insertions that turn one snapshot of the deck items into
+ * another.  Items are matched with equals() and hashCode(), and must be unique in a snapshot.
+ */
+class DeckListDiffer {
+
+    static final int OP_REMOVE = 0;
+    static final int OP_MOVE = 1;
+    static final int OP_INSERT = 2;
+
+    /**
+     * A single update, to be applied in order.  For removals and insertions, position is the
+     * first position of the range and count its length, for moves, count is the target position.
+     */
+    static class Op {
+        int type;
+        int position;
+        int count;
+
+        Op(int type, int position, int count) {
+            this.type = type;
+            this.position = position;
+            this.count = count;
+        }
+    }
+
+    interface DiffCallback {
+        /**
+         * Called on the main thread with the updates, or null if the snapshots contain duplicate
+         * items and can not be diffed.
+         */
+        void onDiffComputed(List<Op> ops);
+    }
+
+    private static final Executor sDiffExecutor = Executors.newSingleThreadExecutor();
+    private static final Handler sMainHandler = new Handler(Looper.getMainLooper());
+
+    /**
+     * Diffs the snapshots on a background thread.  Neither list may be modified until the
+     * callback was called.
+     */
+    static <T> void computeDiffAsync(final List<T> oldList, final List<T> newList,
+                                     final DiffCallback callback) {
+        sDiffExecutor.execute(new Runnable() {
+            @Override
+            public void run() {
+                final List<Op> ops = computeDiff(oldList, newList);
+                sMainHandler.post(new Runnable() {
+                    @Override
+                    public void run() {
+                        callback.onDiffComputed(ops);
+                    }
+                });
+            }
+        });
+    }
+
+    /**
+     * Returns the updates that turn oldList into newList, or null if either list contains
+     * duplicate items.  The number of moves is minimal, the items in the longest run that is
+     * already in the new order stay in place.
+     */
+    static <T> List<Op> computeDiff(List<T> oldList, List<T> newList) {
+        int oldSize = oldList.size();
+        int newSize = newList.size();
+        HashMap<T, Integer> oldPositions = new HashMap<>(oldSize * 2);
+        for (int i = 0; i < oldSize; i++) {
+            oldPositions.put(oldList.get(i), i);
+        }
+        HashMap<T, Integer> newPositions = new HashMap<>(newSize * 2);
+        for (int i = 0; i < newSize; i++) {
+            newPositions.put(newList.get(i), i);
+        }
+        if (oldPositions.size() != oldSize || newPositions.size() != newSize) {
+            return null;
+        }
+
+        ArrayList<Op> ops = new ArrayList<>();
+
+        // Remove the items that are gone, back to front so that the positions stay valid
+        Op lastRemove = null;
+        for (int i = oldSize - 1; i >= 0; i--) {
+            if (newPositions.containsKey(oldList.get(i))) continue;
+            if (lastRemove != null && lastRemove.position == i + 1) {
+                lastRemove.position = i;
+                lastRemove.count++;
+            } else {
+                lastRemove = new Op(OP_REMOVE, i, 1);
+                ops.add(lastRemove);
+            }
+        }
+
+        // Find the longest run of remaining items that is already in the new order
+        int[] targets = new int[oldSize];
+        int keptCount = 0;
+        for (int i = 0; i < oldSize; i++) {
+            Integer target = newPositions.get(oldList.get(i));
+            if (target != null) {
+                targets[keptCount++] = target;
+            }
+        }
+        if (keptCount < oldSize) {
+            targets = Arrays.copyOf(targets, keptCount);
+        }
+        boolean[] inPlace = longestIncreasingSubsequence(targets);
+        boolean[] movesByTarget = new boolean[newSize];
+        for (int i = 0; i < keptCount; i++) {
+            movesByTarget[targets[i]] = !inPlace[i];
+        }
+
+        // Move every other item right behind its predecessor in the new order.  Walking in the
+        // new order, the predecessor is either in place or has already been moved, so the moved
+        // items end up in runs behind the last item in place before them.  Each item gets a slot
+        // for where it starts and one for where it ends, and a Fenwick tree over the occupied
+        // slots turns them into positions, which keeps each move at O(log n).
+        int[] keptByTarget = new int[newSize];
+        for (int i = 0; i < keptCount; i++) {
+            keptByTarget[targets[i]] = i;
+        }
+        int[] anchors = new int[keptCount];
+        int[] runCounts = new int[keptCount + 1];
+        int anchor = -1;
+        for (int i = 0; i < newSize; i++) {
+            if (!oldPositions.containsKey(newList.get(i))) continue;
+            int kept = keptByTarget[i];
+            if (movesByTarget[i]) {
+                anchors[kept] = anchor;
+                runCounts[anchor + 1]++;
+            } else {
+                anchor = kept;
+            }
+        }
+        int slotCount = 0;
+        int[] initialSlots = new int[keptCount];
+        int[] runStarts = new int[keptCount + 1];
+        for (int a = -1; a < keptCount; a++) {
+            if (a >= 0) {
+                initialSlots[a] = slotCount++;
+            }
+            runStarts[a + 1] = slotCount;
+            slotCount += runCounts[a + 1];
+        }
+        int[] occupied = new int[slotCount + 1];
+        for (int i = 0; i < keptCount; i++) {
+            addToSlot(occupied, initialSlots[i], 1);
+        }
+        for (int i = 0; i < newSize; i++) {
+            if (!movesByTarget[i]) continue;
+            int kept = keptByTarget[i];
+            int initialSlot = initialSlots[kept];
+            int finalSlot = runStarts[anchors[kept] + 1]++;
+            int from = countOccupiedBefore(occupied, initialSlot);
+            addToSlot(occupied, initialSlot, -1);
+            int to = countOccupiedBefore(occupied, finalSlot);
+            addToSlot(occupied, finalSlot, 1);
+            if (from != to) {
+                ops.add(new Op(OP_MOVE, from, to));
+            }
+        }
+
+        // Insert the new items front to back, each lands at its final position
+        Op lastInsert = null;
+        for (int i = 0; i < newSize; i++) {
+            if (oldPositions.containsKey(newList.get(i))) continue;
+            if (lastInsert != null && lastInsert.position + lastInsert.count == i) {
+                lastInsert.count++;
+            } else {
+                lastInsert = new Op(OP_INSERT, i, 1);
+                ops.add(lastInsert);
+            }
+        }
+        return ops;
+    }
+
+    /**
+     * Adds delta to the given slot of the Fenwick tree.
+     */
+    private static void addToSlot(int[] tree, int slot, int delta) {
+        for (int i = slot + 1; i < tree.length; i += i & -i) {
+            tree[i] += delta;
+        }
+    }
+
+    /**
+     * Returns the sum of the slots before the given one in the Fenwick tree.
+     */
+    private static int countOccupiedBefore(int[] tree, int slot) {
+        int count = 0;
+        for (int i = slot; i > 0; i -= i & -i) {
+            count += tree[i];
+        }
+        return count;
+    }
+
+    /**
+     * Returns which values are part of a longest strictly increasing subsequence.
+     */
+    static boolean[] longestIncreasingSubsequence(int[] values) {
+        int n = values.length;
+        // tails[k] is the index of the smallest tail of an increasing subsequence of length k + 1
+        int[] tails = new int[n];
+        int[] parents = new int[n];
+        int length = 0;
+        for (int i = 0; i < n; i++) {
+            int lo = 0;
+            int hi = length;
+            while (lo < hi) {
+                int mid = (lo + hi) >>> 1;
+                if (values[tails[mid]] < values[i]) {
+                    lo = mid + 1;
+                } else {
+                    hi = mid;
+                }
+            }
+            parents[i] = lo > 0 ? tails[lo - 1] : -1;
+            tails[lo] = i;
+            if (lo == length) length++;
+        }
+
+        boolean[] result = new boolean[n];
+        int i = length > 0 ? tails[length - 1] : -1;
+        while (i >= 0) {
+            result[i] = true;
+            i = parents[i];
+        }
+        return result;
+    }
+}
@@ -0,0 +1,62 @@
+package com.appeaser.deckview.views;
+
+import java.util.HashMap;
+
+/**
+ * Maps the stable id of each item of an adapter, or the item itself if the adapter has no stable
+ * ids, to its position.  The deck rebuilds it once per data set change to move its attached
+ * views to the new positions of their items.
+ */
+class DeckPositionIndex {
+
+    private final HashMap<Object, Integer> mPositions = new HashMap<>();
+    private boolean mHasStableIds;
+
+    /**
+     * Rebuilds the index from the items of the adapter.
+     */
+    void rebuild(DeckView.Adapter<?> adapter) {
+        mPositions.clear();
+        mHasStableIds = adapter.hasStableIds();
+        adapter.indexPositions(this);
+    }
+
+    /**
+     * Adds the items from positionStart to positionEnd - 1.  Placeholders and items without an
+     * id are left out, they can not be tracked.
+     */
+    void addRange(DeckView.Adapter<?> adapter, int positionStart, int positionEnd) {
+        for (int i = positionStart; i < positionEnd; i++) {
+            Object indexKey = getIndexKey(mHasStableIds ? null : adapter.getItem(i),
+                    mHasStableIds ? adapter.getItemId(i) : DeckView.Adapter.NO_ID);
+            if (indexKey != null) {
+                mPositions.put(indexKey, i);
+            }
+        }
+    }
+
+    /**
+     * Returns the position of the item with the given key or stable id, or -1 if it is not in
+     * the index.
+     */
+    int getPosition(Object key, long itemId) {
+        Object indexKey = getIndexKey(key, itemId);
+        Integer position = indexKey != null ? mPositions.get(indexKey) : null;
+        return position != null ? position : -1;
+    }
+
+    /**
+     * Drops all entries, so that the index does not hold on to the items between data set
+     * changes.
+     */
+    void clear() {
+        mPositions.clear();
+    }
+
+    private Object getIndexKey(Object key, long itemId) {
+        if (!mHasStableIds) {
+            return key;
+        }
+        return itemId != DeckView.Adapter.NO_ID ? Long.valueOf(itemId) : null;
+    }
+}
@@ -1,10 +1,17 @@
 package com.appeaser.deckview.views;
 
 import android.animation.ValueAnimator;
+import android.content.ComponentCallbacks2;
 import android.content.Context;
+import android.content.res.Configuration;
 import android.graphics.Matrix;
 import android.graphics.Rect;
+import android.os.Looper;
+import android.os.MessageQueue;
 import android.util.AttributeSet;
+import android.util.DisplayMetrics;
+import android.util.Log;
+import android.util.SparseArray;
 import android.view.LayoutInflater;
 import android.view.MotionEvent;
 import android.view.View;
@@ -15,15 +22,17 @@ import android.widget.FrameLayout;
 import com.appeaser.deckview.R;
 import com.appeaser.deckview.helpers.DeckChildViewTransform;
 import com.appeaser.deckview.helpers.DeckViewConfig;
+import com.appeaser.deckview.helpers.ThumbnailLoader;
 import com.appeaser.deckview.utilities.DVConstants;
 import com.appeaser.deckview.utilities.DVUtils;
 import com.appeaser.deckview.utilities.DozeTrigger;
+import com.appeaser.deckview.utilities.ThumbnailCache;
 import com.appeaser.deckview.utilities.ReferenceCountedTrigger;
 
 import java.lang.ref.WeakReference;
 import java.util.ArrayList;
-import java.util.HashMap;
 import java.util.Iterator;
+import java.util.List;
 
 /**
  * The visual representation of a task stack view
@@ -33,17 +42,33 @@ import java.util.Iterator;
 public class DeckView<T> extends FrameLayout implements DeckChildView.DeckChildViewCallbacks<T>,
         DeckViewScroller.DeckViewScrollerCallbacks, ViewPool.ViewPoolConsumer<DeckChildView<T>, T> {
 
+    // The ways the card views can be created, see setChildViewCreationMode()
+    public static final int CHILD_VIEW_CREATION_INFLATE = 0;
+    public static final int CHILD_VIEW_CREATION_PROGRAMMATIC = 1;
+
     DeckViewConfig mConfig;
 
-    DeckViewLayoutAlgorithm<T> mLayoutAlgorithm;
+    DeckViewLayoutAlgorithm mLayoutAlgorithm;
     DeckViewScroller mStackScroller;
     DeckViewTouchHandler mTouchHandler;
     ViewPool<DeckChildView<T>, T> mViewPool;
-    ArrayList<DeckChildViewTransform> mCurrentTaskTransforms = new ArrayList<>();
+    DeckChildViewTransform[] mCurrentTaskTransforms = new DeckChildViewTransform[0];
     DozeTrigger mUIDozeTrigger;
     Rect mTaskStackBounds = new Rect();
     int mFocusedTaskIndex = -1;
     int mPrevAccessibilityFocusedIndex = -1;
+    StackCurve mStackCurve = new LogStackCurve();
+    int mStackCurveResolution = StackCurve.DEFAULT_RESOLUTION;
+    int mStackCurveInterpolation = StackCurve.INTERPOLATION_LINEAR;
+    int mScrapCacheSize = ViewPool.DEFAULT_SCRAP_CAPACITY;
+    int mMaxViewPoolSize = ViewPool.DEFAULT_MAX_POOL_SIZE;
+    RecycledDeckViewPool mRecycledViewPool;
+    ThumbnailLoader<T> mThumbnailLoader;
+    ThumbnailPrefetcher<T> mThumbnailPrefetcher = new ThumbnailPrefetcher<>(this);
+    int mChildViewCreationMode = CHILD_VIEW_CREATION_INFLATE;
+    // The number of views created and the total time it took, by creation mode
+    long[] mChildViewCreationCount = new long[2];
+    long[] mChildViewCreationNanos = new long[2];
 
     // Optimizations
     int mStackViewsAnimationDuration;
@@ -58,9 +83,44 @@ public class DeckView<T> extends FrameLayout implements DeckChildView.DeckChildV
     Matrix mTmpMatrix = new Matrix();
     Rect mTmpRect = new Rect();
     DeckChildViewTransform mTmpTransform = new DeckChildViewTransform();
-    HashMap<T, DeckChildView> mTmpTaskViewMap = new HashMap<>();
+    SparseArray<DeckChildView<T>> mTmpTaskViewMap = new SparseArray<>();
     LayoutInflater mInflater;
 
+    // The nesting depth of batch updates, and the data change deferred until the batch ends
+    int mBatchUpdateDepth;
+    boolean mDataChangePending;
+    float mPendingAnchorScrollDelta;
+    // Incremented with every submitted list, so that stale diffs are dropped
+    int mSubmitListGeneration;
+    // The positions of the items by stable id or key, only filled during a data set change
+    DeckPositionIndex mPositionIndex = new DeckPositionIndex();
+
+    // Cards that show less than this share of their thumbnail keep its preview, see
+    // ThumbnailLoader.setProgressive()
+    static final float MIN_THUMBNAIL_UPGRADE_VISIBLE_SHARE = 0.5f;
+
+    // Releases the recycled views when the system runs low on memory
+    ComponentCallbacks2 mMemoryCallbacks = new ComponentCallbacks2() {
+        @Override
+        public void onTrimMemory(int level) {
+            if (level >= ComponentCallbacks2.TRIM_MEMORY_RUNNING_LOW) {
+                trimViewPool();
+                trimThumbnailCache();
+            }
+        }
+
+        @Override
+        public void onConfigurationChanged(Configuration newConfig) {
+            // Do nothing
+        }
+
+        @Override
+        public void onLowMemory() {
+            trimViewPool();
+            trimThumbnailCache();
+        }
+    };
+
     // A convenience update listener to request updating clipping of tasks
     ValueAnimator.AnimatorUpdateListener mRequestUpdateClippingListener =
             new ValueAnimator.AnimatorUpdateListener() {
@@ -89,12 +149,26 @@ public class DeckView<T> extends FrameLayout implements DeckChildView.DeckChildV
     }
 
     public void initialize(Callback<T> callback) {
+        initialize(callback, null);
+    }
+
+    /**
+     * Initializes the deck with an adapter that supplies the items by position. If the adapter
+     * is null, the items are read from {@link Callback#getData()}.
+     */
+    public void initialize(Callback<T> callback, Adapter<T> adapter) {
         mCallback = callback;
+        mAdapter = adapter != null ? adapter : new CallbackAdapter<>(callback);
+        mAdapter.mDeckView = this;
         requestLayout();
 
         mViewPool = new ViewPool<>(getContext(), this);
+        mViewPool.setScrapCapacity(mScrapCacheSize);
+        mViewPool.setMaxSize(mMaxViewPoolSize);
         mInflater = LayoutInflater.from(getContext());
-        mLayoutAlgorithm = new DeckViewLayoutAlgorithm<>(mConfig);
+        mLayoutAlgorithm = new DeckViewLayoutAlgorithm(mConfig);
+        mLayoutAlgorithm.setStackCurve(mStackCurve, mStackCurveResolution,
+                mStackCurveInterpolation);
         mStackScroller = new DeckViewScroller(getContext(), mConfig, mLayoutAlgorithm);
         mStackScroller.setCallbacks(this);
         mTouchHandler = new DeckViewTouchHandler(getContext(), this, mConfig, mStackScroller);
@@ -110,6 +184,204 @@ public class DeckView<T> extends FrameLayout implements DeckChildView.DeckChildV
                 }
             }
         });
+
+        prewarmViewPool();
+    }
+
+    /**
+     * Creates the views of the cards that are expected to be visible on the first layout while
+     * the main thread is idle, one view per idle callback, and adds them to the view pool, so
+     * that the first layout only has to bind them.  The number of cards is estimated from the
+     * display size, since the deck is not measured yet.
+     */
+    void prewarmViewPool() {
+        DisplayMetrics dm = getResources().getDisplayMetrics();
+        Rect taskStackBounds = new Rect();
+        mConfig.getTaskStackBounds(dm.widthPixels, dm.heightPixels, mConfig.systemInsets.top,
+                mConfig.systemInsets.right, taskStackBounds);
+        taskStackBounds.bottom -= mConfig.systemInsets.bottom;
+        computeRects(dm.widthPixels, dm.heightPixels, taskStackBounds,
+                mConfig.launchedWithAltTab, mConfig.launchedFromHome);
+        final int viewCount = mLayoutAlgorithm.computeStackVisibilityReport(
+                mAdapter.getItemCount()).numVisibleTasks;
+        if (viewCount <= 0) return;
+
+        final ViewPool<DeckChildView<T>, T> viewPool = mViewPool;
+        Looper.myQueue().addIdleHandler(new MessageQueue.IdleHandler() {
+            @Override
+            public boolean queueIdle() {
+                // Stop once the deck has been re-initialized or has created the views it needs
+                if (viewPool != mViewPool || getChildCount() + viewPool.size() >= viewCount) {
+                    return false;
+                }
+                viewPool.addCreatedView(createChildView(mChildViewCreationMode));
+                return true;
+            }
+        });
+    }
+
+    /**
+     * Sets the number of cards that keep their loaded data after they have been scrolled out of
+     * view, so that scrolling them back in does not reload it.
+     */
+    public void setScrapCacheSize(int size) {
+        mScrapCacheSize = Math.max(0, size);
+        if (mViewPool != null) {
+            mViewPool.setScrapCapacity(mScrapCacheSize);
+        }
+    }
+
+    /**
+     * Sets the maximum number of unbound views that are kept for reuse.
+     */
+    public void setMaxViewPoolSize(int size) {
+        mMaxViewPoolSize = Math.max(0, size);
+        if (mViewPool != null) {
+            mViewPool.setMaxSize(mMaxViewPoolSize);
+        }
+    }
+
+    /**
+     * Returns the number of views that are not attached to the deck but kept for reuse, both
+     * unbound ones and the ones that still hold the data of their card.
+     */
+    public int getViewPoolSize() {
+        return mViewPool != null ? mViewPool.size() + mViewPool.scrapSize() : 0;
+    }
+
+    /**
+     * Returns the number of bytes of thumbnails held by the views that are kept for reuse.
+     */
+    public long getViewPoolRetainedBytes() {
+        return mViewPool != null ? mViewPool.getRetainedBytes() : 0;
+    }
+
+    /**
+     * Drops all the views that are kept for reuse, along with their data, including the views
+     * in the shared recycled view pool.
+     */
+    public void trimViewPool() {
+        if (mViewPool != null) {
+            mViewPool.clearScrap();
+            mViewPool.trimToSize(0);
+        }
+        if (mRecycledViewPool != null) {
+            mRecycledViewPool.clear();
+        }
+    }
+
+    /**
+     * Shares the given pool of unbound views with other decks.  Views that this deck does not
+     * keep for itself go to the shared pool, and new views are taken from the shared pool before
+     * they are inflated.  All the views of the deck go to the shared pool when the deck is
+     * detached from its window.
+     */
+    public void setRecycledViewPool(RecycledDeckViewPool pool) {
+        mRecycledViewPool = pool;
+    }
+
+    public RecycledDeckViewPool getRecycledViewPool() {
+        return mRecycledViewPool;
+    }
+
+    /**
+     * Sets the loader of the card thumbnails.  The deck then requests the thumbnail of each card
+     * right before {@link Callback#loadViewData}, which only has to bind the header, and cancels
+     * the request when the card goes back to the view pool.  While the deck is scrolled, the
+     * thumbnails of the cards about to scroll into view are prefetched into the loader's cache.
+     */
+    public void setThumbnailLoader(ThumbnailLoader<T> loader) {
+        if (mThumbnailLoader != null) {
+            mThumbnailLoader.cancelAll();
+        }
+        mThumbnailLoader = loader;
+    }
+
+    public ThumbnailLoader<T> getThumbnailLoader() {
+        return mThumbnailLoader;
+    }
+
+    /**
+     * Drops the thumbnails and previews cached by the thumbnail loader, and the bitmaps pooled
+     * for reuse.
+     */
+    void trimThumbnailCache() {
+        ThumbnailCache cache = mThumbnailLoader != null ? mThumbnailLoader.getCache() : null;
+        if (cache != null) {
+            cache.evictAll();
+            if (cache.getBitmapPool() != null) {
+                cache.getBitmapPool().clear();
+            }
+        }
+        ThumbnailCache previewCache = mThumbnailLoader != null ?
+                mThumbnailLoader.getPreviewCache() : null;
+        if (previewCache != null) {
+            previewCache.evictAll();
+        }
+    }
+
+    /**
+     * Sets how new card views are created, either by inflating the deck_child_view layout
+     * ({@link #CHILD_VIEW_CREATION_INFLATE}, the default) or by building the same hierarchy in
+     * code ({@link #CHILD_VIEW_CREATION_PROGRAMMATIC}), which skips parsing the layout.  Which
+     * one is faster depends on the device, ChildViewCreationBenchmark in the androidTest
+     * sources measures both.  Inflating keeps any overridden deck_child_view layout working.
+     * Views that have already been created are not affected.
+     */
+    public void setChildViewCreationMode(int mode) {
+        if (mode != CHILD_VIEW_CREATION_INFLATE && mode != CHILD_VIEW_CREATION_PROGRAMMATIC) {
+            throw new IllegalArgumentException("Unknown child view creation mode: " + mode);
+        }
+        mChildViewCreationMode = mode;
+    }
+
+    public int getChildViewCreationMode() {
+        return mChildViewCreationMode;
+    }
+
+    /**
+     * Creates a new card view in the given mode.
+     */
+    DeckChildView<T> createChildView(int mode) {
+        if (mode == CHILD_VIEW_CREATION_PROGRAMMATIC) {
+            return DeckChildViewFactory.create(getContext());
+        }
+        return (DeckChildView<T>) mInflater.inflate(R.layout.deck_child_view, this, false);
+    }
+
+    /**
+     * Moves all the views of the deck, attached or kept for reuse, to the shared recycled view
+     * pool.  The views are picked up again on the next synchronization.
+     */
+    void recycleAllViews() {
+        int childCount = getChildCount();
+        for (int i = childCount - 1; i >= 0; i--) {
+            DeckChildView<T> tv = (DeckChildView) getChildAt(i);
+            mViewPool.returnViewToPool(tv);
+        }
+        mViewPool.clearScrap();
+        mViewPool.trimToSize(0);
+        mStackViewsDirty = true;
+    }
+
+    /**
+     * Sets the curve along which the cards are laid out.  The lookup tables of the curve are
+     * built once per curve and resolution and shared between decks, a lower resolution or linear
+     * interpolation is cheaper, a higher resolution or cubic interpolation is more precise.
+     *
+     * @param resolution    the number of table steps, see {@link StackCurve#DEFAULT_RESOLUTION}
+     * @param interpolation {@link StackCurve#INTERPOLATION_LINEAR} or
+     *                      {@link StackCurve#INTERPOLATION_CUBIC}
+     */
+    public void setStackCurve(StackCurve curve, int resolution, int interpolation) {
+        mStackCurve = curve;
+        mStackCurveResolution = resolution;
+        mStackCurveInterpolation = interpolation;
+        if (mLayoutAlgorithm != null) {
+            mLayoutAlgorithm.setStackCurve(curve, resolution, interpolation);
+            requestLayout();
+            requestSynchronizeStackViewsWithModel();
+        }
     }
 
     /**
@@ -128,6 +400,7 @@ public class DeckView<T> extends FrameLayout implements DeckChildView.DeckChildV
 
         // Mark each task view for relayout
         if (mViewPool != null) {
+            mViewPool.clearScrap();
             Iterator<DeckChildView<T>> iterator = mViewPool.poolViewIterator();
             if (iterator != null) {
                 while (iterator.hasNext()) {
@@ -183,16 +456,48 @@ public class DeckView<T> extends FrameLayout implements DeckChildView.DeckChildV
      * Finds the child view given a specific task.
      */
     public DeckChildView getChildViewForTask(T key) {
+        if (key == null) return null;
         int childCount = getChildCount();
         for (int i = 0; i < childCount; i++) {
             DeckChildView tv = (DeckChildView) getChildAt(i);
-            if (tv.getAttachedKey().equals(key)) {
+            if (key.equals(tv.getAttachedKey())) {
                 return tv;
             }
         }
         return null;
     }
 
+    /**
+     * Finds the child view bound to the item at the given position.
+     */
+    DeckChildView<T> getChildViewForPosition(int position) {
+        if (position < 0) return null;
+        int index = findChildInsertIndex(position, getChildCount()) - 1;
+        if (index >= 0) {
+            DeckChildView<T> tv = (DeckChildView) getChildAt(index);
+            if (tv.getAttachedPosition() == position) {
+                return tv;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Returns the adapter supplying the items of this deck.
+     */
+    public Adapter<T> getAdapter() {
+        return mAdapter;
+    }
+
+    /**
+     * Returns the position that the item now at the given position had before the current data
+     * set change, or -1 if it is new or its view is not attached.
+     */
+    int getPreviousPosition(int position) {
+        DeckChildView<T> tv = getChildViewForTask(mAdapter.getItem(position));
+        return tv != null ? tv.getAttachedPosition() : -1;
+    }
+
     /**
      * Returns the stack algorithm for this task stack.
      */
@@ -201,101 +506,79 @@ public class DeckView<T> extends FrameLayout implements DeckChildView.DeckChildV
     }
 
     /**
-     * Gets the stack transforms of a list of tasks, and returns the visible range of tasks.
+     * Gets the stack transforms of the visible tasks, and returns the visible range of tasks.
      */
-    private boolean updateStackTransforms(ArrayList<DeckChildViewTransform> taskTransforms,
-                                          ArrayList<T> data,
-                                          float stackScroll,
-                                          int[] visibleRangeOut,
+    private boolean updateStackTransforms(float stackScroll, int[] visibleRangeOut,
                                           boolean boundTranslationsToRect) {
-        int taskTransformCount = taskTransforms.size();
-        int taskCount = data.size();
-        int frontMostVisibleIndex = -1;
-        int backMostVisibleIndex = -1;
-
-        // We can reuse the task transforms where possible to reduce object allocation
-        if (taskTransformCount < taskCount) {
-            // If there are less transforms than tasks, then add as many transforms as necessary
-            for (int i = taskTransformCount; i < taskCount; i++) {
-                taskTransforms.add(new DeckChildViewTransform());
-            }
-        } else if (taskTransformCount > taskCount) {
-            // If there are more transforms than tasks, then just subset the transform list
-            taskTransforms.subList(0, taskCount);
-        }
-
-        // Update the stack transforms
-        DeckChildViewTransform prevTransform = null;
-        for (int i = taskCount - 1; i >= 0; i--) {
-            DeckChildViewTransform transform =
-                    mLayoutAlgorithm.getStackTransform(data.get(i),
-                            stackScroll, taskTransforms.get(i), prevTransform);
-            if (transform.visible) {
-                if (frontMostVisibleIndex < 0) {
-                    frontMostVisibleIndex = i;
-                }
-                backMostVisibleIndex = i;
-            } else {
-                if (backMostVisibleIndex != -1) {
-                    // We've reached the end of the visible range, so going down the rest of the
-                    // stack, we can just reset the transforms accordingly
-                    while (i >= 0) {
-                        taskTransforms.get(i).reset();
-                        i--;
-                    }
-                    break;
-                }
-            }
+        // Only the tasks in the visible window get a transform, so the transforms only need to
+        // grow with the number of visible tasks, not with the number of tasks
+        ensureTaskTransformCapacity(mLayoutAlgorithm.getMaxCandidateTaskCount());
+        return mLayoutAlgorithm.computeVisibleStackTransforms(stackScroll, mCurrentTaskTransforms,
+                visibleRangeOut, boundTranslationsToRect);
+    }
 
-            if (boundTranslationsToRect) {
-                transform.translationY = Math.min(transform.translationY,
-                        mLayoutAlgorithm.mViewRect.bottom);
+    /**
+     * Ensures that there are enough task transforms for the given number of visible tasks.
+     */
+    void ensureTaskTransformCapacity(int capacity) {
+        int taskTransformCount = mCurrentTaskTransforms.length;
+        if (taskTransformCount < capacity) {
+            DeckChildViewTransform[] taskTransforms = new DeckChildViewTransform[capacity];
+            System.arraycopy(mCurrentTaskTransforms, 0, taskTransforms, 0, taskTransformCount);
+            for (int i = taskTransformCount; i < capacity; i++) {
+                taskTransforms[i] = new DeckChildViewTransform();
             }
-            prevTransform = transform;
-        }
-        if (visibleRangeOut != null) {
-            visibleRangeOut[0] = frontMostVisibleIndex;
-            visibleRangeOut[1] = backMostVisibleIndex;
+            mCurrentTaskTransforms = taskTransforms;
         }
-        return frontMostVisibleIndex != -1 && backMostVisibleIndex != -1;
+    }
+
+    /**
+     * Returns the current transform of the visible task at the given position.
+     */
+    DeckChildViewTransform getCurrentTaskTransform(int position) {
+        return mCurrentTaskTransforms[position % mCurrentTaskTransforms.length];
     }
 
     /**
      * Synchronizes the views with the model
      */
     boolean synchronizeStackViewsWithModel() {
-        if (mStackViewsDirty) {
+        // The layout algorithm does not know the new item count until the batch ends
+        if (mStackViewsDirty && mBatchUpdateDepth == 0) {
             // Get all the task transforms
-            ArrayList<T> data = mCallback.getData();
             float stackScroll = mStackScroller.getStackScroll();
             int[] visibleRange = mTmpVisibleRange;
-            boolean isValidVisibleRange = updateStackTransforms(mCurrentTaskTransforms,
-                    data, stackScroll, visibleRange, false);
+            boolean isValidVisibleRange = updateStackTransforms(stackScroll, visibleRange, false);
+            if (isValidVisibleRange) {
+                mAdapter.onVisibleRangeChanged(visibleRange[1], visibleRange[0]);
+            }
 
             // Return all the invisible children to the pool
             mTmpTaskViewMap.clear();
             int childCount = getChildCount();
             for (int i = childCount - 1; i >= 0; i--) {
                 DeckChildView<T> tv = (DeckChildView) getChildAt(i);
-                T key = tv.getAttachedKey();
-                int taskIndex = data.indexOf(key);
+                int taskIndex = tv.getAttachedPosition();
 
                 if (visibleRange[1] <= taskIndex
                         && taskIndex <= visibleRange[0]) {
-                    mTmpTaskViewMap.put(key, tv);
-                } else {
+                    mTmpTaskViewMap.put(taskIndex, tv);
+                } else if (taskIndex < 0) {
+                    // The task was removed
                     mViewPool.returnViewToPool(tv);
+                } else {
+                    // Keep the data of the task in case it is scrolled back in
+                    mViewPool.returnViewToScrap(tv);
                 }
             }
 
             for (int i = visibleRange[0]; isValidVisibleRange && i >= visibleRange[1]; i--) {
-                T key = data.get(i);
-                DeckChildViewTransform transform = mCurrentTaskTransforms.get(i);
-                DeckChildView tv = mTmpTaskViewMap.get(key);
+                DeckChildViewTransform transform = getCurrentTaskTransform(i);
+                DeckChildView<T> tv = mTmpTaskViewMap.get(i);
 
                 if (tv == null) {
-                    // TODO Check
-                    tv = mViewPool.pickUpViewFromPool(key, key);
+                    T key = mAdapter.getItem(i);
+                    tv = mViewPool.pickUpViewFromPool(key, key, i);
 
                     if (mStackViewsAnimationDuration > 0) {
                         // For items in the list, put them in start animating them from the
@@ -310,10 +593,14 @@ public class DeckView<T> extends FrameLayout implements DeckChildView.DeckChildV
                 }
 
                 // Animate the task into place
-                tv.updateViewPropertiesToTaskTransform(mCurrentTaskTransforms.get(i),
+                tv.updateViewPropertiesToTaskTransform(transform,
                         mStackViewsAnimationDuration, mRequestUpdateClippingListener);
             }
 
+            // Prefetch the thumbnails of the tasks that are about to scroll into view, after the
+            // visible tasks have requested theirs
+            mThumbnailPrefetcher.onStackViewsSynchronized(visibleRange, stackScroll);
+
             // Reset the request-synchronize params
             mStackViewsAnimationDuration = 0;
             mStackViewsDirty = false;
@@ -383,7 +670,8 @@ public class DeckView<T> extends FrameLayout implements DeckChildView.DeckChildV
     void updateMinMaxScroll(boolean boundScrollToNewMinMax, boolean launchedWithAltTab,
                             boolean launchedFromHome) {
         // Compute the min and max scroll values
-        mLayoutAlgorithm.computeMinMaxScroll(mCallback.getData(), launchedWithAltTab, launchedFromHome);
+        mLayoutAlgorithm.computeMinMaxScroll(mAdapter.getItemCount(), launchedWithAltTab,
+                launchedFromHome);
 
         // Debug logging
         if (boundScrollToNewMinMax) {
@@ -398,14 +686,11 @@ public class DeckView<T> extends FrameLayout implements DeckChildView.DeckChildV
         // Return early if the task is already focused
         if (childIndex == mFocusedTaskIndex) return;
 
-        ArrayList<T> data = mCallback.getData();
-
-        if (0 <= childIndex && childIndex < data.size()) {
+        if (0 <= childIndex && childIndex < mAdapter.getItemCount()) {
             mFocusedTaskIndex = childIndex;
 
             // Focus the view if possible, otherwise, focus the view after we scroll into position
-            T key = data.get(childIndex);
-            DeckChildView tv = getChildViewForTask(key);
+            DeckChildView tv = getChildViewForPosition(childIndex);
             Runnable postScrollRunnable = null;
             if (tv != null) {
                 tv.setFocusedTask(animateFocusedState);
@@ -414,7 +699,7 @@ public class DeckView<T> extends FrameLayout implements DeckChildView.DeckChildV
                     @Override
                     public void run() {
 
-                        DeckChildView tv = getChildViewForTask(mCallback.getData().get(mFocusedTaskIndex));
+                        DeckChildView tv = getChildViewForPosition(mFocusedTaskIndex);
                         if (tv != null) {
                             tv.setFocusedTask(animateFocusedState);
                         }
@@ -424,7 +709,7 @@ public class DeckView<T> extends FrameLayout implements DeckChildView.DeckChildV
 
             // Scroll the view into position (just center it in the curve)
             if (scrollToNewPosition) {
-                float newScroll = mLayoutAlgorithm.getStackScrollForTask(key) - 0.5f;
+                float newScroll = mLayoutAlgorithm.getStackScrollForTask(childIndex) - 0.5f;
                 newScroll = mStackScroller.getBoundedStackScroll(newScroll);
                 mStackScroller.animateScroll(mStackScroller.getStackScroll(), newScroll, postScrollRunnable);
             } else {
@@ -472,7 +757,7 @@ public class DeckView<T> extends FrameLayout implements DeckChildView.DeckChildV
      */
     public void focusNextTask(boolean forward, boolean animateFocusedState) {
         // Find the next index to focus
-        int numTasks = mCallback.getData().size();
+        int numTasks = mAdapter.getItemCount();
         if (numTasks == 0) return;
 
         int direction = (forward ? -1 : 1);
@@ -487,8 +772,8 @@ public class DeckView<T> extends FrameLayout implements DeckChildView.DeckChildV
      * Resets the focused task.
      */
     void resetFocusedTask() {
-        if ((0 <= mFocusedTaskIndex) && (mFocusedTaskIndex < mCallback.getData().size())) {
-            DeckChildView tv = getChildViewForTask(mCallback.getData().get(mFocusedTaskIndex));
+        if ((0 <= mFocusedTaskIndex) && (mFocusedTaskIndex < mAdapter.getItemCount())) {
+            DeckChildView tv = getChildViewForPosition(mFocusedTaskIndex);
             if (tv != null) {
                 tv.unsetFocusedTask();
             }
@@ -503,10 +788,10 @@ public class DeckView<T> extends FrameLayout implements DeckChildView.DeckChildV
         if (childCount > 0) {
             DeckChildView<T> backMostTask = (DeckChildView) getChildAt(0);
             DeckChildView<T> frontMostTask = (DeckChildView) getChildAt(childCount - 1);
-            event.setFromIndex(mCallback.getData().indexOf(backMostTask.getAttachedKey()));
-            event.setToIndex(mCallback.getData().indexOf(frontMostTask.getAttachedKey()));
+            event.setFromIndex(backMostTask.getAttachedPosition());
+            event.setToIndex(frontMostTask.getAttachedPosition());
         }
-        event.setItemCount(mCallback.getData().size());
+        event.setItemCount(mAdapter.getItemCount());
         event.setScrollY(mStackScroller.mScroller.getCurrY());
         event.setMaxScrollY(mStackScroller.progressToScrollRange(mLayoutAlgorithm.mMaxScrollP));
     }
@@ -531,7 +816,12 @@ public class DeckView<T> extends FrameLayout implements DeckChildView.DeckChildV
         mStackScroller.computeScroll();
         // Synchronize the views
         synchronizeStackViewsWithModel();
+        // The thumbnail priorities only change when the views move
+        boolean stackChanged = mStackViewsClipDirty;
         clipTaskViews();
+        if (stackChanged) {
+            updateThumbnailPriorities();
+        }
         // Notify accessibility
         sendAccessibilityEvent(AccessibilityEvent.TYPE_VIEW_SCROLLED);
     }
@@ -546,6 +836,10 @@ public class DeckView<T> extends FrameLayout implements DeckChildView.DeckChildV
 
         // Update the scroll bounds
         updateMinMaxScroll(false, launchedWithAltTab, launchedFromHome);
+
+        // Size the task transforms for the tasks that are visible initially
+        ensureTaskTransformCapacity(mLayoutAlgorithm.computeStackVisibilityReport(
+                mAdapter.getItemCount()).numVisibleTasks);
     }
 
     public int getCurrentChildIndex() {
@@ -555,7 +849,7 @@ public class DeckView<T> extends FrameLayout implements DeckChildView.DeckChildV
         DeckChildView<T> frontMostChild = (DeckChildView) getChildAt(getChildCount() / 2);
 
         if (frontMostChild != null) {
-            return mCallback.getData().indexOf(frontMostChild.getAttachedKey());
+            return frontMostChild.getAttachedPosition();
         }
 
         return -1;
@@ -568,10 +862,9 @@ public class DeckView<T> extends FrameLayout implements DeckChildView.DeckChildV
         if (getCurrentChildIndex() == childIndex)
             return;
 
-        if (0 <= childIndex && childIndex < mCallback.getData().size()) {
+        if (0 <= childIndex && childIndex < mAdapter.getItemCount()) {
             // Scroll the view into position (just center it in the curve)
-            float newScroll = mLayoutAlgorithm.getStackScrollForTask(
-                    mCallback.getData().get(childIndex)) - 0.5f;
+            float newScroll = mLayoutAlgorithm.getStackScrollForTask(childIndex) - 0.5f;
             newScroll = mStackScroller.getBoundedStackScroll(newScroll);
             mStackScroller.setStackScroll(newScroll);
             //Alternate (animated) way
@@ -579,6 +872,25 @@ public class DeckView<T> extends FrameLayout implements DeckChildView.DeckChildV
         }
     }
 
+    @Override
+    protected void onAttachedToWindow() {
+        super.onAttachedToWindow();
+        getContext().registerComponentCallbacks(mMemoryCallbacks);
+        if (mStackViewsDirty) {
+            // Pick up the views again if they were recycled while detached
+            invalidate();
+        }
+    }
+
+    @Override
+    protected void onDetachedFromWindow() {
+        super.onDetachedFromWindow();
+        getContext().unregisterComponentCallbacks(mMemoryCallbacks);
+        if (mRecycledViewPool != null && mViewPool != null) {
+            recycleAllViews();
+        }
+    }
+
     /**
      * This is called with the full window width and height to allow stack view children to
      * perform the full screen transition down.
@@ -685,10 +997,10 @@ public class DeckView<T> extends FrameLayout implements DeckChildView.DeckChildV
         // enter animation).
         if (mConfig.launchedWithAltTab) {
             if (mConfig.launchedFromAppWithThumbnail) {
-                focusTask(Math.max(0, mCallback.getData().size() - 2), false,
+                focusTask(Math.max(0, mAdapter.getItemCount() - 2), false,
                         mConfig.launchedHasConfigurationChanged);
             } else {
-                focusTask(Math.max(0, mCallback.getData().size() - 1), false,
+                focusTask(Math.max(0, mAdapter.getItemCount() - 1), false,
                         mConfig.launchedHasConfigurationChanged);
             }
         }
@@ -708,13 +1020,12 @@ public class DeckView<T> extends FrameLayout implements DeckChildView.DeckChildV
             return;
         }
 
-        if (mCallback.getData().size() > 0) {
+        if (mAdapter.getItemCount() > 0) {
             int childCount = getChildCount();
 
             // Animate all the task views into view
             for (int i = childCount - 1; i >= 0; i--) {
                 DeckChildView<T> tv = (DeckChildView) getChildAt(i);
-                T key = tv.getAttachedKey();
                 ctx.currentTaskTransform = new DeckChildViewTransform();
                 ctx.currentStackViewIndex = i;
                 ctx.currentStackViewCount = childCount;
@@ -722,7 +1033,8 @@ public class DeckView<T> extends FrameLayout implements DeckChildView.DeckChildV
                 // TODO: this needs to go
                 ctx.currentTaskOccludesLaunchTarget = false;
                 ctx.updateListener = mRequestUpdateClippingListener;
-                mLayoutAlgorithm.getStackTransform(key, mStackScroller.getStackScroll(),
+                mLayoutAlgorithm.getStackTransform(tv.getAttachedPosition(),
+                        mStackScroller.getStackScroll(),
                         ctx.currentTaskTransform, null);
                 tv.startEnterRecentsAnimation(ctx);
             }
@@ -828,17 +1140,30 @@ public class DeckView<T> extends FrameLayout implements DeckChildView.DeckChildV
 
     @Override
     public DeckChildView createView(Context context) {
-        return (DeckChildView) mInflater.inflate(R.layout.deck_child_view, this, false);
+        if (mRecycledViewPool != null) {
+            DeckChildView tv = mRecycledViewPool.getRecycledView(
+                    RecycledDeckViewPool.DEFAULT_VIEW_TYPE);
+            if (tv != null) {
+                return tv;
+            }
+        }
+        if (!DVConstants.DebugFlags.App.EnableChildViewCreationTiming) {
+            return createChildView(mChildViewCreationMode);
+        }
+
+        int mode = mChildViewCreationMode;
+        long start = System.nanoTime();
+        DeckChildView tv = createChildView(mode);
+        mChildViewCreationNanos[mode] += System.nanoTime() - start;
+        mChildViewCreationCount[mode]++;
+        Log.i(getClass().getSimpleName(), "createView: mode " + mode + ", average "
+                + (mChildViewCreationNanos[mode] / mChildViewCreationCount[mode] / 1000)
+                + "us over " + mChildViewCreationCount[mode] + " views");
+        return tv;
     }
 
     @Override
-    public void prepareViewToEnterPool(DeckChildView<T> tv) {
-        T key = tv.getAttachedKey();
-
-        mCallback.unloadViewData(key);
-        tv.onTaskUnbound();
-        tv.onDataUnloaded();
-
+    public void prepareViewToEnterScrap(DeckChildView<T> tv) {
         // Detach the view from the hierarchy
         detachViewFromParent(tv);
 
@@ -847,19 +1172,48 @@ public class DeckView<T> extends FrameLayout implements DeckChildView.DeckChildV
 
         // Reset the clip state of the task view
         tv.setClipViewInStack(false);
+
+        if (mThumbnailLoader != null) {
+            // The task scrolled away, its thumbnail is loaded again if it scrolls back in
+            mThumbnailLoader.cancel(tv);
+        }
+    }
+
+    @Override
+    public void prepareViewToEnterPool(DeckChildView<T> tv) {
+        T key = tv.getAttachedKey();
+
+        if (key != null) {
+            mCallback.unloadViewData(key);
+        }
+        tv.onTaskUnbound();
+        tv.onDataUnloaded();
+        if (mThumbnailLoader != null) {
+            // The view no longer draws the thumbnail, so it can be decoded into again
+            mThumbnailLoader.release(tv);
+        }
     }
 
     @Override
-    public void prepareViewToLeavePool(DeckChildView<T> dcv, T key, boolean isNewView) {
+    public void prepareViewToLeavePool(DeckChildView<T> dcv, T key, int position,
+                                       boolean isNewView, boolean isDataBound) {
         // It is possible for a view to be returned to the view pool before it is laid out,
         // which means that we will need to relayout the view when it is first used next.
         boolean requiresRelayout = dcv.getWidth() <= 0 && !isNewView;
 
         // Rebind the task and request that this task's data be filled into the TaskView
-        dcv.onTaskBound(key);
-
-        // Load the task data
-        mCallback.loadViewData(new WeakReference<>(dcv), key);
+        dcv.onTaskBound(key, position, mAdapter.getItemId(position));
+
+        // Load the task data, placeholders are filled in once their item is loaded.  Views from
+        // the scrap still have the data of the task.
+        if (key != null && !isDataBound) {
+            loadViewData(dcv, key);
+        } else if (key != null && mThumbnailLoader != null) {
+            // The thumbnail request was cancelled when the view went to the scrap
+            Rect taskRect = mLayoutAlgorithm.mTaskRect;
+            mThumbnailLoader.loadIfMissing(dcv, key, taskRect.width(), taskRect.height(),
+                    getThumbnailPriority(position, 1f));
+        }
 
         // If the doze trigger has already fired, then update the state for this task view
         if (mUIDozeTrigger.hasTriggered()) {
@@ -872,20 +1226,7 @@ public class DeckView<T> extends FrameLayout implements DeckChildView.DeckChildV
         }
 
         // Find the index where this task should be placed in the stack
-        int insertIndex = -1;
-        int position = mCallback.getData().indexOf(key);
-        if (position != -1) {
-            int childCount = getChildCount();
-            for (int i = 0; i < childCount; i++) {
-                T otherKey = ((DeckChildView<T>) getChildAt(i)).getAttachedKey();
-                int pos = mCallback.getData().indexOf(otherKey);
-                if (position < pos) {
-                    insertIndex = i;
-                    break;
-                }
-            }
-        }
-
+        int insertIndex = getChildInsertIndex(position);
 
         // Add/attach the view to the hierarchy
         if (isNewView) {
@@ -903,9 +1244,124 @@ public class DeckView<T> extends FrameLayout implements DeckChildView.DeckChildV
         dcv.setClipViewInStack(true);
     }
 
+    /**
+     * Requests the thumbnail of the task from the thumbnail loader, if there is one, and then
+     * the data of the task from the callback.  The loader binds cached thumbnails right away, so
+     * the callback can tell from {@link DeckChildView#getThumbnail()} whether it still has to
+     * load one.
+     */
+    void loadViewData(DeckChildView<T> tv, T key) {
+        if (mThumbnailLoader != null) {
+            Rect taskRect = mLayoutAlgorithm.mTaskRect;
+            mThumbnailLoader.load(tv, key, taskRect.width(), taskRect.height(),
+                    getThumbnailPriority(tv.getAttachedPosition(), 1f));
+        }
+        mCallback.loadViewData(new WeakReference<>(tv), key);
+    }
+
+    /**
+     * Updates the priorities of the pending thumbnail requests to the current progress and clip
+     * of their tasks.  Mostly clipped tasks are not upgraded from their preview.
+     */
+    void updateThumbnailPriorities() {
+        if (mThumbnailLoader == null || (!mThumbnailLoader.hasPendingRequests()
+                && !mThumbnailLoader.hasParkedRequests())) {
+            return;
+        }
+        int childCount = getChildCount();
+        for (int i = 0; i < childCount; i++) {
+            DeckChildView<T> tv = (DeckChildView) getChildAt(i);
+            int position = tv.getAttachedPosition();
+            if (position < 0) continue;
+            int height = tv.getMeasuredHeight();
+            float visibleShare = height > 0 ?
+                    Math.max(0f, 1f - (float) tv.getViewBounds().getClipBottom() / height) : 1f;
+            mThumbnailLoader.setPriority(tv, getThumbnailPriority(position, visibleShare));
+            mThumbnailLoader.setUpgradeWanted(tv,
+                    visibleShare >= MIN_THUMBNAIL_UPGRADE_VISIBLE_SHARE);
+        }
+    }
+
+    /**
+     * Returns the priority of the thumbnail of the task at the given position, of which the
+     * given share is visible: the visible share, plus the progress of the task so that unclipped
+     * tasks further to the front come first.  Tasks that barely peek out from behind the ones in
+     * front of them come last.
+     */
+    float getThumbnailPriority(int position, float visibleShare) {
+        // The transforms are only current for the tasks in the visible range
+        boolean inVisibleRange = mCurrentTaskTransforms.length > 0 && mTmpVisibleRange[1] >= 0
+                && mTmpVisibleRange[1] <= position && position <= mTmpVisibleRange[0];
+        float p = inVisibleRange ? getCurrentTaskTransform(position).p : 0f;
+        return visibleShare + Math.max(0f, p);
+    }
+
+    /**
+     * Returns the child index at which the view of the task at the given position should be
+     * placed in the stack, or -1 to place it in front of all other views.
+     */
+    int getChildInsertIndex(int position) {
+        int childCount = getChildCount();
+        int index = findChildInsertIndex(position, childCount);
+        return index < childCount ? index : -1;
+    }
+
+    /**
+     * Returns the index of the first of the children 0..end - 1 whose attached position is after
+     * the given position, or end if there is none.  The children are kept sorted by their
+     * attached position, so this is a binary search.
+     */
+    int findChildInsertIndex(int position, int end) {
+        int lo = 0;
+        int hi = end;
+        while (lo < hi) {
+            int mid = (lo + hi) >>> 1;
+            if (((DeckChildView<T>) getChildAt(mid)).getAttachedPosition() <= position) {
+                lo = mid + 1;
+            } else {
+                hi = mid;
+            }
+        }
+        return lo;
+    }
+
+    /**
+     * Restores the order of the children by attached position after their positions were
+     * changed.  The views of removed items (at position -1) go to the back, they are returned to
+     * the pool on the next synchronization.  Only the children that are out of order are moved.
+     */
+    void sortChildrenByPosition() {
+        int childCount = getChildCount();
+        for (int i = 1; i < childCount; i++) {
+            DeckChildView<T> tv = (DeckChildView) getChildAt(i);
+            int index = findChildInsertIndex(tv.getAttachedPosition(), i);
+            if (index < i) {
+                detachViewFromParent(i);
+                attachViewToParent(tv, index, tv.getLayoutParams());
+            }
+        }
+    }
+
     @Override
-    public boolean hasPreferredData(DeckChildView<T> tv, T preferredData) {
-        return (tv.getAttachedKey() != null && tv.getAttachedKey().equals(preferredData));
+    public T getPreferredData(DeckChildView<T> tv) {
+        return tv.getAttachedKey();
+    }
+
+    @Override
+    public void discardView(DeckChildView<T> tv, boolean isNewView) {
+        // Finish the removal of the views that were detached from the hierarchy
+        if (!isNewView) {
+            removeDetachedView(tv, false);
+        }
+        tv.setCallbacks(null);
+        if (mRecycledViewPool != null) {
+            mRecycledViewPool.putRecycledView(RecycledDeckViewPool.DEFAULT_VIEW_TYPE, tv);
+        }
+    }
+
+    @Override
+    public long getRetainedBytes(DeckChildView<T> tv) {
+        return DVUtils.getBitmapByteCount(tv.getThumbnail());
     }
 
     /**
@@ -926,23 +1382,24 @@ public class DeckView<T> extends FrameLayout implements DeckChildView.DeckChildV
     public void onDeckChildViewClicked(DeckChildView<T> dcv, T key) {
         // Cancel any doze triggers
         mUIDozeTrigger.stopDozing();
-        mCallback.onItemClick(key);
+        if (key != null) {
+            mCallback.onItemClick(key);
+        }
     }
 
     @Override
     public void onDeckChildViewDismissed(DeckChildView<T> dcv) {
         boolean taskWasFocused = dcv.isFocusedTask();
 
-        T key = dcv.getAttachedKey();
-        int taskIndex = mCallback.getData().indexOf(key);
+        int taskIndex = dcv.getAttachedPosition();
 
         onStackTaskRemoved(dcv);
 
         // If the dismissed task was focused, then we should focus the new task in the same index
         if (taskIndex != -1 && taskWasFocused) {
-            int nextTaskIndex = Math.min(mCallback.getData().size() - 1, taskIndex - 1);
+            int nextTaskIndex = Math.min(mAdapter.getItemCount() - 1, taskIndex - 1);
             if (nextTaskIndex >= 0) {
-                DeckChildView nextTv = getChildViewForTask(mCallback.getData().get(nextTaskIndex));
+                DeckChildView nextTv = getChildViewForPosition(nextTaskIndex);
                 if (nextTv != null) {
                     // Focus the next task, and only animate the visible state if we are launched
                     // from Alt-Tab
@@ -957,52 +1414,380 @@ public class DeckView<T> extends FrameLayout implements DeckChildView.DeckChildV
         // to work here because the task is no longer in the list
         if (removedView != null) {
             T key = removedView.getAttachedKey();
-            int removedPosition = mCallback.getData().indexOf(key);
             mViewPool.returnViewToPool(removedView);
 
             // Notify the callback that we've removed the task and it can clean up after it
-            mCallback.onViewDismissed(key);
+            if (key != null) {
+                mCallback.onViewDismissed(key);
+            }
         }
     }
 
     public void notifyDataSetChanged() {
+        int itemCount = mAdapter.getItemCount();
+        mViewPool.clearScrap();
+
         // Get the stack scroll of the task to anchor to (since we are removing something, the front
         // most task will be our anchor task)
-        T anchorTask = null;
-        float prevAnchorTaskScroll = 0;
-        boolean pullStackForward = mCallback.getData().size() > 0;
-        if (pullStackForward) {
-            anchorTask = mCallback.getData().get(mCallback.getData().size() - 1);
-            prevAnchorTaskScroll = mLayoutAlgorithm.getStackScrollForTask(anchorTask);
+        int prevFrontMostPosition = itemCount > 0 ? getPreviousPosition(itemCount - 1) : -1;
+
+        // Move the attached views to the new positions of their items, views whose items are gone
+        // will be returned to the pool on the next synchronization
+        int childCount = getChildCount();
+        if (childCount > 0) {
+            mPositionIndex.rebuild(mAdapter);
+            for (int i = 0; i < childCount; i++) {
+                DeckChildView<T> tv = (DeckChildView) getChildAt(i);
+                tv.setAttachedPosition(mPositionIndex.getPosition(tv.getAttachedKey(),
+                        tv.getAttachedItemId()));
+            }
+            mPositionIndex.clear();
+            sortChildrenByPosition();
+        }
+
+        updateStackForDataChange(prevFrontMostPosition);
+    }
+
+    /**
+     * Notifies the deck that an item was inserted at the given position.
+     */
+    public void notifyItemInserted(int position) {
+        notifyItemRangeInserted(position, 1);
+    }
+
+    /**
+     * Notifies the deck that itemCount items were inserted starting at positionStart.  Only the
+     * attached views are updated, the cost does not depend on the number of items in the deck.
+     */
+    public void notifyItemRangeInserted(int positionStart, int itemCount) {
+        if (itemCount <= 0) return;
+        int prevItemCount = mAdapter.getItemCount() - itemCount;
+
+        // Shift the views after the inserted range, the inserted items are picked up from the pool
+        // on the next synchronization if they are visible
+        offsetChildPositions(positionStart, itemCount);
+        updateScrapPositions(positionStart, positionStart, itemCount);
+        if (mFocusedTaskIndex >= positionStart) {
+            mFocusedTaskIndex += itemCount;
+        }
+
+        // The front most task keeps its place, unless the items were appended in front of it
+        updateStackForDataChange(positionStart < prevItemCount ? prevItemCount - 1 : -1);
+    }
+
+    /**
+     * Notifies the deck that the item at the given position was removed.
+     */
+    public void notifyItemRemoved(int position) {
+        notifyItemRangeRemoved(position, 1);
+    }
+
+    /**
+     * Notifies the deck that itemCount items starting at positionStart were removed.  Only the
+     * attached views are updated, the cost does not depend on the number of items in the deck.
+     */
+    public void notifyItemRangeRemoved(int positionStart, int itemCount) {
+        if (itemCount <= 0) return;
+        int prevItemCount = mAdapter.getItemCount() + itemCount;
+        int positionEnd = positionStart + itemCount;
+
+        // Unbind the views of the removed items from their positions so that they are returned to
+        // the pool on the next synchronization, and shift the views after the removed range
+        int childCount = getChildCount();
+        for (int i = 0; i < childCount; i++) {
+            DeckChildView<T> tv = (DeckChildView) getChildAt(i);
+            int position = tv.getAttachedPosition();
+            if (position >= positionEnd) {
+                tv.setAttachedPosition(position - itemCount);
+            } else if (position >= positionStart) {
+                tv.setAttachedPosition(-1);
+            }
+        }
+        sortChildrenByPosition();
+        updateScrapPositions(positionStart, positionEnd, -itemCount);
+        if (mFocusedTaskIndex >= positionEnd) {
+            mFocusedTaskIndex -= itemCount;
+        } else if (mFocusedTaskIndex >= positionStart) {
+            mFocusedTaskIndex = -1;
+        }
+
+        // If the front most items were removed, the task behind them becomes the front most task
+        updateStackForDataChange(positionEnd < prevItemCount ? prevItemCount - 1 :
+                positionStart - 1);
+    }
+
+    /**
+     * Notifies the deck that the item at fromPosition was moved to toPosition.
+     */
+    public void notifyItemMoved(int fromPosition, int toPosition) {
+        if (fromPosition == toPosition) return;
+        int itemCount = mAdapter.getItemCount();
+
+        int childCount = getChildCount();
+        for (int i = 0; i < childCount; i++) {
+            DeckChildView<T> tv = (DeckChildView) getChildAt(i);
+            tv.setAttachedPosition(getMovedPosition(tv.getAttachedPosition(), fromPosition,
+                    toPosition));
+        }
+        // Move the view to its new place in the stack order
+        sortChildrenByPosition();
+        for (int i = mViewPool.scrapSize() - 1; i >= 0; i--) {
+            DeckChildView<T> tv = mViewPool.getScrapView(i);
+            tv.setAttachedPosition(getMovedPosition(tv.getAttachedPosition(), fromPosition,
+                    toPosition));
+        }
+        if (mFocusedTaskIndex == fromPosition) {
+            mFocusedTaskIndex = toPosition;
+        } else if (fromPosition < mFocusedTaskIndex && mFocusedTaskIndex <= toPosition) {
+            mFocusedTaskIndex--;
+        } else if (toPosition <= mFocusedTaskIndex && mFocusedTaskIndex < fromPosition) {
+            mFocusedTaskIndex++;
+        }
+
+        int prevFrontMostPosition = itemCount - 1;
+        if (toPosition == itemCount - 1) {
+            prevFrontMostPosition = fromPosition;
+        } else if (fromPosition == itemCount - 1) {
+            prevFrontMostPosition = itemCount - 2;
+        }
+        updateStackForDataChange(prevFrontMostPosition);
+    }
+
+    /**
+     * Notifies the deck that the item at the given position has changed.
+     */
+    public void notifyItemChanged(int position) {
+        notifyItemRangeChanged(position, 1);
+    }
+
+    /**
+     * Notifies the deck that the itemCount items starting at positionStart have changed, the
+     * data of the attached views in that range is reloaded.
+     */
+    public void notifyItemRangeChanged(int positionStart, int itemCount) {
+        int positionEnd = positionStart + itemCount;
+        // The scrap views of the changed items are bound to their old data
+        updateScrapPositions(positionStart, positionEnd, 0);
+        int childCount = getChildCount();
+        for (int i = 0; i < childCount; i++) {
+            DeckChildView<T> tv = (DeckChildView) getChildAt(i);
+            int position = tv.getAttachedPosition();
+            if (positionStart <= position && position < positionEnd) {
+                T key = mAdapter.getItem(position);
+                if (tv.getAttachedKey() != null) {
+                    mCallback.unloadViewData(tv.getAttachedKey());
+                }
+                if (mThumbnailLoader != null) {
+                    mThumbnailLoader.cancel(tv);
+                }
+                tv.onTaskBound(key, position, mAdapter.getItemId(position));
+                if (key != null) {
+                    loadViewData(tv, key);
+                }
+            }
+        }
+    }
+
+    /**
+     * Replaces the items of the deck with the given snapshot.  The snapshot is diffed against the
+     * current items on a background thread, and the list returned by
+     * {@link Callback#getData()} is then updated in place on the main thread with the minimal
+     * removals, moves and insertions, so that the views of the items in both snapshots keep
+     * their loaded data.  Items are matched with equals() and hashCode().  The data list must
+     * not be modified otherwise while a submitted list is pending.
+     */
+    public void submitList(List<T> newList) {
+        if (!(mAdapter instanceof CallbackAdapter)) {
+            throw new IllegalStateException("submitList() requires the deck to be initialized "
+                    + "without an Adapter");
+        }
+        final int generation = ++mSubmitListGeneration;
+        final ArrayList<T> oldItems = new ArrayList<>(mCallback.getData());
+        final ArrayList<T> newItems = new ArrayList<>(newList);
+        DeckListDiffer.computeDiffAsync(oldItems, newItems, new DeckListDiffer.DiffCallback() {
+            @Override
+            public void onDiffComputed(List<DeckListDiffer.Op> ops) {
+                if (generation == mSubmitListGeneration) {
+                    applyListDiff(oldItems, newItems, ops);
+                }
+            }
+        });
+    }
+
+    /**
+     * Applies the diff of a submitted list to the data list, and notifies the deck of each
+     * update.
+     */
+    void applyListDiff(List<T> oldItems, List<T> newItems, List<DeckListDiffer.Op> ops) {
+        ArrayList<T> data = mCallback.getData();
+        if (ops == null || data.size() != oldItems.size()) {
+            // The snapshots can not be diffed, or the data changed in the meantime
+            data.clear();
+            data.addAll(newItems);
+            notifyDataSetChanged();
+            return;
+        }
+
+        beginBatchUpdate();
+        int opCount = ops.size();
+        for (int i = 0; i < opCount; i++) {
+            DeckListDiffer.Op op = ops.get(i);
+            switch (op.type) {
+                case DeckListDiffer.OP_REMOVE:
+                    data.subList(op.position, op.position + op.count).clear();
+                    notifyItemRangeRemoved(op.position, op.count);
+                    break;
+                case DeckListDiffer.OP_MOVE:
+                    data.add(op.count, data.remove(op.position));
+                    notifyItemMoved(op.position, op.count);
+                    break;
+                case DeckListDiffer.OP_INSERT:
+                    data.addAll(op.position, newItems.subList(op.position,
+                            op.position + op.count));
+                    notifyItemRangeInserted(op.position, op.count);
+                    break;
+            }
+        }
+
+        // Pick up the new instances of the kept items, they are equal to the old ones
+        int itemCount = newItems.size();
+        for (int i = 0; i < itemCount; i++) {
+            data.set(i, newItems.get(i));
+        }
+        // The attached views of the kept items are bound to the new instances as well, so that
+        // their key matches getItem() again
+        int childCount = getChildCount();
+        for (int i = 0; i < childCount; i++) {
+            DeckChildView<T> tv = (DeckChildView) getChildAt(i);
+            int position = tv.getAttachedPosition();
+            if (position >= 0 && position < itemCount && tv.getAttachedKey() != null) {
+                tv.onTaskBound(newItems.get(position));
+            }
+        }
+        endBatchUpdate();
+    }
+
+    /**
+     * Returns where an item at the given position ends up when the item at fromPosition is moved
+     * to toPosition.
+     */
+    static int getMovedPosition(int position, int fromPosition, int toPosition) {
+        if (position == fromPosition) {
+            return toPosition;
+        } else if (fromPosition < position && position <= toPosition) {
+            return position - 1;
+        } else if (toPosition <= position && position < fromPosition) {
+            return position + 1;
+        }
+        return position;
+    }
+
+    /**
+     * Moves the scrap views of the items from positionStart to positionEnd - 1 to the pool and
+     * offsets the positions of the scrap views after them.  The scrap views keep the positions
+     * they had when they were attached, and the scrap holds only a few views, so this does not
+     * depend on the size of the range.
+     */
+    void updateScrapPositions(int positionStart, int positionEnd, int offset) {
+        for (int i = mViewPool.scrapSize() - 1; i >= 0; i--) {
+            DeckChildView<T> tv = mViewPool.getScrapView(i);
+            int position = tv.getAttachedPosition();
+            if (position >= positionEnd) {
+                tv.setAttachedPosition(position + offset);
+            } else if (position >= positionStart) {
+                mViewPool.clearScrapView(i);
+            }
+        }
+    }
+
+    /**
+     * Offsets the positions of the attached views at or after the given position.
+     */
+    void offsetChildPositions(int positionStart, int offset) {
+        int childCount = getChildCount();
+        for (int i = 0; i < childCount; i++) {
+            DeckChildView<T> tv = (DeckChildView) getChildAt(i);
+            int position = tv.getAttachedPosition();
+            if (position >= positionStart) {
+                tv.setAttachedPosition(position + offset);
+            }
         }
+    }
+
+    /**
+     * Starts a batch of data changes.  Until the matching {@link #endBatchUpdate()}, the notify
+     * methods only update the positions of the attached views, the scroll bounds, the anchoring
+     * of the front most task and the animation of the views into place are done once for the
+     * whole batch when it ends.  Batches may be nested.
+     */
+    public void beginBatchUpdate() {
+        mBatchUpdateDepth++;
+    }
+
+    /**
+     * Ends a batch of data changes started with {@link #beginBatchUpdate()}.
+     */
+    public void endBatchUpdate() {
+        if (mBatchUpdateDepth == 0) {
+            throw new IllegalStateException("endBatchUpdate() called without beginBatchUpdate()");
+        }
+        mBatchUpdateDepth--;
+        if (mBatchUpdateDepth == 0 && mDataChangePending) {
+            applyPendingDataChange();
+        }
+    }
+
+    /**
+     * Records a change of the items of the deck, and updates the stack for it unless a batch
+     * update is in progress.  The front most task is used to anchor the stack,
+     * prevFrontMostPosition is the position it had before the change, or -1 if it is new.
+     */
+    void updateStackForDataChange(int prevFrontMostPosition) {
+        int itemCount = mAdapter.getItemCount();
+        // Offset the stack by as much as the anchor task would otherwise move back, the offsets
+        // of the changes in a batch add up
+        if (itemCount > 0) {
+            mPendingAnchorScrollDelta += mLayoutAlgorithm.getStackScrollDelta(
+                    prevFrontMostPosition, itemCount - 1);
+        }
+        mDataChangePending = true;
+        if (mBatchUpdateDepth == 0) {
+            applyPendingDataChange();
+        }
+    }
+
+    /**
+     * Updates the scroll bounds after the items of the deck have changed, and animates the
+     * visible views into their new places.
+     */
+    void applyPendingDataChange() {
+        int itemCount = mAdapter.getItemCount();
+        float anchorScrollDelta = mPendingAnchorScrollDelta;
+        mPendingAnchorScrollDelta = 0f;
+        mDataChangePending = false;
 
         // Update the min/max scroll and animate other task views into their new positions
         updateMinMaxScroll(true, mConfig.launchedWithAltTab, mConfig.launchedFromHome);
 
-        // Offset the stack by as much as the anchor task would otherwise move back
-        if (pullStackForward) {
-            float anchorTaskScroll = mLayoutAlgorithm.getStackScrollForTask(anchorTask);
-            mStackScroller.setStackScroll(mStackScroller.getStackScroll() + (anchorTaskScroll
-                    - prevAnchorTaskScroll));
+        if (itemCount > 0) {
+            mStackScroller.setStackScroll(mStackScroller.getStackScroll() + anchorScrollDelta);
             mStackScroller.boundScroll();
         }
 
         // Animate all the tasks into place
         requestSynchronizeStackViewsWithModel(200);
 
-        T newFrontMostTask = mCallback.getData().size() > 0 ?
-                mCallback.getData().get(mCallback.getData().size() - 1)
-                : null;
+        T newFrontMostTask = itemCount > 0 ? mAdapter.getItem(itemCount - 1) : null;
         // Update the new front most task
         if (newFrontMostTask != null) {
-            DeckChildView<T> frontTv = getChildViewForTask(newFrontMostTask);
+            DeckChildView<T> frontTv = getChildViewForPosition(itemCount - 1);
             if (frontTv != null) {
                 frontTv.onTaskBound(newFrontMostTask);
             }
         }
 
         // If there are no remaining tasks
-        if (mCallback.getData().size() == 0) {
+        if (itemCount == 0) {
             mCallback.onNoViewsToDeck();
         }
     }
@@ -1017,7 +1802,7 @@ public class DeckView<T> extends FrameLayout implements DeckChildView.DeckChildV
     @Override
     public void onDeckChildViewFocusChanged(DeckChildView<T> tv, boolean focused) {
         if (focused) {
-            mFocusedTaskIndex = mCallback.getData().indexOf(tv.getAttachedKey());
+            mFocusedTaskIndex = tv.getAttachedPosition();
         }
     }
 
@@ -1032,16 +1817,15 @@ public class DeckView<T> extends FrameLayout implements DeckChildView.DeckChildV
     }
 
     public void notifyDataSetChangedOld() {
-        ArrayList<T> data = mCallback.getData();
+        int itemCount = mAdapter.getItemCount();
 
         // Get the stack scroll of the task to anchor to (since we are removing something, the front
         // most task will be our anchor task)
-        T anchorTask = null;
         float prevAnchorTaskScroll = 0;
-        boolean pullStackForward = data.size() > 0;
+        boolean pullStackForward = itemCount > 0;
         if (pullStackForward) {
-            anchorTask = data.get(data.size() - 1);
-            prevAnchorTaskScroll = mLayoutAlgorithm.getStackScrollForTask(anchorTask);
+            prevAnchorTaskScroll = mLayoutAlgorithm.getStackScrollForTask(
+                    getPreviousPosition(itemCount - 1));
         }
 
         // Update the min/max scroll and animate other task views into their new positions
@@ -1049,7 +1833,7 @@ public class DeckView<T> extends FrameLayout implements DeckChildView.DeckChildV
 
         // Offset the stack by as much as the anchor task would otherwise move back
         if (pullStackForward) {
-            float anchorTaskScroll = mLayoutAlgorithm.getStackScrollForTask(anchorTask);
+            float anchorTaskScroll = mLayoutAlgorithm.getStackScrollForTask(itemCount - 1);
             mStackScroller.setStackScroll(mStackScroller.getStackScroll() + (anchorTaskScroll
                     - prevAnchorTaskScroll));
             mStackScroller.boundScroll();
@@ -1058,7 +1842,7 @@ public class DeckView<T> extends FrameLayout implements DeckChildView.DeckChildV
         // Animate all the tasks into place
         requestSynchronizeStackViewsWithModel(200);
 
-        T newFrontMostTask = data.get(data.size() - 1);
+        T newFrontMostTask = mAdapter.getItem(itemCount - 1);
         // Update the new front most task
         if (newFrontMostTask != null) {
             DeckChildView<T> frontTv = getChildViewForTask(newFrontMostTask);
@@ -1068,13 +1852,18 @@ public class DeckView<T> extends FrameLayout implements DeckChildView.DeckChildV
         }
 
         // If there are no remaining tasks
-        if (mCallback.getData().size() == 0)
+        if (mAdapter.getItemCount() == 0)
             mCallback.onNoViewsToDeck();
     }
 
     Callback<T> mCallback;
+    Adapter<T> mAdapter;
 
     public interface Callback<T> {
+        /**
+         * Returns the items of the deck. Only used if the deck was initialized without an
+         * {@link Adapter}.
+         */
         ArrayList<T> getData();
 
         void loadViewData(WeakReference<DeckChildView<T>> dcv, T item);
@@ -1087,4 +1876,78 @@ public class DeckView<T> extends FrameLayout implements DeckChildView.DeckChildV
 
         void onNoViewsToDeck();
     }
+
+    /**
+     * Supplies the items of the deck by position.  An adapter with stable ids lets the deck keep
+     * track of its items across data set changes without relying on equals() and hashCode() of
+     * the items.
+     */
+    public static abstract class Adapter<T> {
+        public static final long NO_ID = -1;
+
+        // The deck this adapter is attached to
+        DeckView<T> mDeckView;
+
+        /**
+         * Returns the number of items in the deck.
+         */
+        public abstract int getItemCount();
+
+        /**
+         * Returns the item at the given position, the front most item is at getItemCount() - 1.
+         * May return null for a placeholder of an item that is not loaded yet.
+         */
+        public abstract T getItem(int position);
+
+        /**
+         * Returns the stable id of the item at the given position, or NO_ID.
+         */
+        public long getItemId(int position) {
+            return NO_ID;
+        }
+
+        /**
+         * Returns whether getItemId() returns a unique id for each item, which stays the same for
+         * as long as the item is in the deck.
+         */
+        public boolean hasStableIds() {
+            return false;
+        }
+
+        /**
+         * Adds the positions of the items to the index that the deck uses to find them again
+         * after a data set change.  Adapters that only hold some of their items add just those.
+         */
+        void indexPositions(DeckPositionIndex index) {
+            index.addRange(this, 0, getItemCount());
+        }
+
+        /**
+         * Called whenever the deck synchronizes its views, with the range of positions that are
+         * currently visible.
+         */
+        void onVisibleRangeChanged(int firstPosition, int lastPosition) {
+        }
+    }
+
+    /**
+     * The default adapter, which reads the items from {@link Callback#getData()}.
+     */
+    private static class CallbackAdapter<T> extends Adapter<T> {
+        private Callback<T> mCallback;
+
+        CallbackAdapter(Callback<T> callback) {
+            mCallback = callback;
+        }
+
+        @Override
+        public int getItemCount() {
+            return mCallback.getData().size();
+        }
+
+        @Override
+        public T getItem(int position) {
+            return mCallback.getData().get(position);
+        }
+    }
 }
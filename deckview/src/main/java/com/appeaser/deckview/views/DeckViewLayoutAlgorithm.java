@@ -6,9 +6,6 @@ import com.appeaser.deckview.helpers.DeckChildViewTransform;
 import com.appeaser.deckview.helpers.DeckViewConfig;
 import com.appeaser.deckview.utilities.DVUtils;
 
-import java.util.ArrayList;
-import java.util.HashMap;
-
 /**
  * The layout logic for a TaskStackView.
  *
@@ -18,13 +15,13 @@ import java.util.HashMap;
  *
  * <p>Source：https://github.com/vikramkakkar/DeckView
  */
-class DeckViewLayoutAlgorithm<T> {
+class DeckViewLayoutAlgorithm {
 
     // These are all going to change，The min scale of the last card in the peek area
     private static final float STACK_PEEK_MIN_SCALE = 0.8f;
 
     // A report of the visibility state of the stack
-    private class VisibilityReport {
+    static class VisibilityReport {
         int numVisibleTasks;
         int numVisibleThumbnails;
 
@@ -50,19 +47,32 @@ class DeckViewLayoutAlgorithm<T> {
     float mMaxScrollP;
     float mInitialScrollP;
     private int mBetweenAffiliationOffset;
-    private HashMap<T, Float> mTaskProgressMap = new HashMap<>();
 
-    // Log function，The large the X_SCALE, the longer the flat area of the curve
-    private static final float X_SCALE = 1.75f;
-    private static final float LOG_BASE = 3000;
-    private static final int PRECISION_STEPS = 250;
-    private static float[] xp;
-    private static float[] px;
+    // The task progress is uniform across the stack, the task at position i sits at
+    // FRONT_MOST_CARD_TOP_P + i * mTaskProgressOffset
+    private static final float FRONT_MOST_CARD_TOP_P = 0.5f;
+    private int mTaskCount;
+    private float mTaskProgressOffset;
+
+    // The lookup tables of the stack curve, shared between decks
+    private StackCurveTable mCurveTable;
+    private int mCurveInterpolation;
 
     DeckViewLayoutAlgorithm(DeckViewConfig config) {
         mConfig = config;
 
-        initializeCurve();
+        setStackCurve(new LogStackCurve(), StackCurve.DEFAULT_RESOLUTION,
+                StackCurve.INTERPOLATION_LINEAR);
+    }
+
+    /**
+     * Sets the curve along which the tasks are laid out, the resolution of its lookup tables and
+     * the interpolation between the table entries.  The min/max scroll has to be recomputed
+     * afterwards.
+     */
+    void setStackCurve(StackCurve curve, int resolution, int interpolation) {
+        mCurveTable = StackCurveTable.get(curve, resolution);
+        mCurveInterpolation = interpolation;
     }
 
     /**
@@ -94,13 +104,11 @@ class DeckViewLayoutAlgorithm<T> {
      * Computes the minimum and maximum scroll progress values.  This method may be called before
      * the RecentsConfiguration is set, so we need to pass in the alt-tab state.
      */
-    void computeMinMaxScroll(ArrayList<T> data, boolean launchedWithAltTab,
+    void computeMinMaxScroll(int taskCount, boolean launchedWithAltTab,
                              boolean launchedFromHome) {
-        // Clear the progress map
-        mTaskProgressMap.clear();
-
         // Return early if we have no tasks
-        if (data.isEmpty()) {
+        if (taskCount == 0) {
+            setTaskProgress(0, 0f);
             mMinScrollP = mMaxScrollP = 0;
             return;
         }
@@ -116,25 +124,15 @@ class DeckViewLayoutAlgorithm<T> {
                 screenYToCurveProgress(mStackVisibleRect.bottom - (mStackVisibleRect.bottom -
                         mStackRect.bottom));
 
-        // Update the task offsets
-        float pAtFrontMostCardTop = 0.5f;
-        int taskCount = data.size();
-        for (int i = 0; i < taskCount; i++) {
-            //Task task = tasks.get(i);
-            //mTaskProgressMap.put(task.key, pAtFrontMostCardTop);
-            mTaskProgressMap.put(data.get(i), pAtFrontMostCardTop);
-
-            if (i < (taskCount - 1)) {
-                // Increment the peek height
-                // TODO: Might need adjustments
-                //float pPeek = task.group.isFrontMostTask(task) ?
-                //pBetweenAffiliateOffset : pWithinAffiliateOffset;
-                pAtFrontMostCardTop += pBetweenAffiliateOffset;
-            }
-        }
+        // Update the task offsets, each task peeks out by the same amount from behind the next
+        // TODO: Might need adjustments
+        //float pPeek = task.group.isFrontMostTask(task) ?
+        //pBetweenAffiliateOffset : pWithinAffiliateOffset;
+        setTaskProgress(taskCount, pBetweenAffiliateOffset);
+        float pAtFrontMostCardTop = getTaskProgress(taskCount - 1);
 
         mMaxScrollP = pAtFrontMostCardTop - ((1f - pTaskHeightOffset - pNavBarOffset));
-        mMinScrollP = data.size() == 1 ? Math.max(mMaxScrollP, 0f) : 0f;
+        mMinScrollP = taskCount == 1 ? Math.max(mMaxScrollP, 0f) : 0f;
         if (launchedWithAltTab && launchedFromHome) {
             // Center the top most task, since that will be focused first
             mInitialScrollP = mMaxScrollP;
@@ -148,8 +146,8 @@ class DeckViewLayoutAlgorithm<T> {
      * Computes the maximum number of visible tasks and thumbnails.  Requires that
      * computeMinMaxScroll() is called first.
      */
-    VisibilityReport computeStackVisibilityReport(ArrayList<T> data) {
-        if (data.size() <= 1) {
+    VisibilityReport computeStackVisibilityReport(int taskCount) {
+        if (taskCount <= 1) {
             return new VisibilityReport(1, 1);
         }
 
@@ -159,12 +157,12 @@ class DeckViewLayoutAlgorithm<T> {
         int numVisibleThumbnails = 1;
         //float progress = mTaskProgressMap.get(tasks.get(tasks.size() - 1).key) - mInitialScrollP;
 
-        float progress = mTaskProgressMap.get(data.get(data.size() - 1)) - mInitialScrollP;
+        float progress = getTaskProgress(taskCount - 1) - mInitialScrollP;
         int prevScreenY = curveProgressToScreenY(progress);
-        for (int i = data.size() - 2; i >= 0; i--) {
+        for (int i = taskCount - 2; i >= 0; i--) {
             //Task task = tasks.get(i);
             //progress = mTaskProgressMap.get(task.key) - mInitialScrollP;
-            progress = mTaskProgressMap.get(data.get(i)) - mInitialScrollP;
+            progress = getTaskProgress(i) - mInitialScrollP;
             if (progress < 0) {
                 break;
             }
@@ -186,7 +184,7 @@ class DeckViewLayoutAlgorithm<T> {
                     // walk through remaining visible set
                     for (int j = i; j >= 0; j--) {
                         numVisibleTasks++;
-                        progress = mTaskProgressMap.get(data.get(i)) - mInitialScrollP;
+                        progress = getTaskProgress(j) - mInitialScrollP;
                         if (progress < 0) {
                             break;
                         }
@@ -201,18 +199,102 @@ class DeckViewLayoutAlgorithm<T> {
         return new VisibilityReport(numVisibleTasks, numVisibleThumbnails);
     }
 
+    /**
+     * Sets the number of tasks and the progress between two consecutive tasks, from which the
+     * progress of each task is derived.
+     */
+    void setTaskProgress(int taskCount, float taskProgressOffset) {
+        mTaskCount = taskCount;
+        mTaskProgressOffset = taskProgressOffset;
+    }
+
+    /**
+     * Returns the range of tasks that can be visible at the given stack scroll, by inverting the
+     * task progress for the top (p = 0) and the bottom (p = 1) of the curve.  The range is padded
+     * by a task on either side to absorb rounding, and may be empty (front < back).
+     */
+    void getCandidateTaskRange(float stackScroll, int[] rangeOut) {
+        int front = mTaskCount - 1;
+        int back = 0;
+        if (mTaskProgressOffset > 0) {
+            front = (int) Math.min(front, Math.floor((stackScroll + 1f - FRONT_MOST_CARD_TOP_P) /
+                    mTaskProgressOffset) + 1);
+            back = (int) Math.max(back, Math.floor((stackScroll - FRONT_MOST_CARD_TOP_P) /
+                    mTaskProgressOffset) - 1);
+        }
+        rangeOut[0] = front;
+        rangeOut[1] = back;
+    }
+
+    /**
+     * Returns the maximum number of tasks in a range returned by getCandidateTaskRange().
+     */
+    int getMaxCandidateTaskCount() {
+        if (mTaskProgressOffset > 0) {
+            return (int) Math.min(mTaskCount, Math.ceil(1f / mTaskProgressOffset) + 4);
+        }
+        return mTaskCount;
+    }
+
+    /**
+     * Computes the transforms of the tasks that are visible at the given stack scroll, and
+     * returns whether any task is visible.  Only the candidate range of tasks is walked, and the
+     * transform of the task at position i is stored in transforms[i % transforms.length], which
+     * must hold at least getMaxCandidateTaskCount() transforms.
+     */
+    boolean computeVisibleStackTransforms(float stackScroll, DeckChildViewTransform[] transforms,
+                                          int[] visibleRangeOut, boolean boundTranslationsToRect) {
+        int frontMostVisibleIndex = -1;
+        int backMostVisibleIndex = -1;
+
+        getCandidateTaskRange(stackScroll, visibleRangeOut);
+        int candidateFront = visibleRangeOut[0];
+        int candidateBack = visibleRangeOut[1];
+
+        // Update the stack transforms
+        DeckChildViewTransform prevTransform = null;
+        for (int i = candidateFront; i >= candidateBack; i--) {
+            DeckChildViewTransform transform = getStackTransform(i, stackScroll,
+                    transforms[i % transforms.length], prevTransform);
+            if (transform.visible) {
+                if (frontMostVisibleIndex < 0) {
+                    frontMostVisibleIndex = i;
+                }
+                backMostVisibleIndex = i;
+            } else {
+                if (backMostVisibleIndex != -1) {
+                    // We've reached the end of the visible range, so going down the rest of the
+                    // window, we can just reset the transforms accordingly
+                    while (i >= candidateBack) {
+                        transforms[i % transforms.length].reset();
+                        i--;
+                    }
+                    break;
+                }
+            }
+
+            if (boundTranslationsToRect) {
+                transform.translationY = Math.min(transform.translationY, mViewRect.bottom);
+            }
+            prevTransform = transform;
+        }
+        visibleRangeOut[0] = frontMostVisibleIndex;
+        visibleRangeOut[1] = backMostVisibleIndex;
+        return frontMostVisibleIndex != -1 && backMostVisibleIndex != -1;
+    }
+
     /**
      * Update/get the transform
      */
-    DeckChildViewTransform getStackTransform(T key, float stackScroll,
-                                                    DeckChildViewTransform transformOut,
-                                                    DeckChildViewTransform prevTransform) {
+    DeckChildViewTransform getStackTransform(int position, float stackScroll,
+                                             DeckChildViewTransform transformOut,
+                                             DeckChildViewTransform prevTransform) {
         // Return early if we have an invalid index
-        if (!mTaskProgressMap.containsKey(key)) {
+        if (position < 0 || position >= mTaskCount) {
             transformOut.reset();
             return transformOut;
         }
-        return getStackTransform(mTaskProgressMap.get(key), stackScroll, transformOut,
+        return getStackTransform(getTaskProgress(position), stackScroll, transformOut,
                 prevTransform);
     }
 
@@ -256,104 +338,41 @@ class DeckViewLayoutAlgorithm<T> {
     }
 
     /**
-     * Returns the scroll to such task top = 1f;
+     * Returns how far the stack has to scroll so that the task at toPosition ends up where the
+     * task at fromPosition was, a negative fromPosition stands for a stack scroll of 0.  Unlike
+     * getStackScrollForTask() this does not depend on the current task count, so it can be used
+     * while the task count is changing.
      */
-    float getStackScrollForTask(T key) {
-        if (!mTaskProgressMap.containsKey(key)) {
-            return 0f;
-        }
-        return mTaskProgressMap.get(key);
+    float getStackScrollDelta(int fromPosition, int toPosition) {
+        float fromScroll = fromPosition >= 0 ? getTaskProgress(fromPosition) : 0f;
+        return getTaskProgress(toPosition) - fromScroll;
     }
 
     /**
-     * Initializes the curve.
+     * Returns the scroll to such task top = 1f;
      */
-    private static void initializeCurve() {
-        if (xp != null && px != null) {
-            return;
-        }
-        xp = new float[PRECISION_STEPS + 1];
-        px = new float[PRECISION_STEPS + 1];
-
-        // Approximate f(x)
-        float[] fx = new float[PRECISION_STEPS + 1];
-        float step = 1f / PRECISION_STEPS;
-        float x = 0;
-        for (int xStep = 0; xStep <= PRECISION_STEPS; xStep++) {
-            fx[xStep] = logFunc(x);
-            x += step;
-        }
-        // Calculate the arc length for x:1->0
-        float pLength = 0;
-        float[] dx = new float[PRECISION_STEPS + 1];
-        dx[0] = 0;
-        for (int xStep = 1; xStep < PRECISION_STEPS; xStep++) {
-            dx[xStep] = (float) Math.sqrt(Math.pow(fx[xStep] - fx[xStep - 1], 2) + Math.pow(step, 2));
-            pLength += dx[xStep];
-        }
-        // Approximate p(x), a function of cumulative progress with x, normalized to 0..1
-        float p = 0;
-        px[0] = 0f;
-        px[PRECISION_STEPS] = 1f;
-        for (int xStep = 1; xStep <= PRECISION_STEPS; xStep++) {
-            p += Math.abs(dx[xStep] / pLength);
-            px[xStep] = p;
-        }
-        // Given p(x), calculate the inverse function x(p). This assumes that x(p) is also a valid
-        // function.
-        int xStep = 0;
-        p = 0;
-        xp[0] = 0f;
-        xp[PRECISION_STEPS] = 1f;
-        for (int pStep = 0; pStep < PRECISION_STEPS; pStep++) {
-            // Walk forward in px and find the x where px <= p && p < px+1
-            while (xStep < PRECISION_STEPS) {
-                if (px[xStep] > p) break;
-                xStep++;
-            }
-            // Now, px[xStep-1] <= p < px[xStep]
-            if (xStep == 0) {
-                xp[pStep] = 0;
-            } else {
-                // Find x such that proportionally, x is correct
-                float fraction = (p - px[xStep - 1]) / (px[xStep] - px[xStep - 1]);
-                x = (xStep - 1 + fraction) * step;
-                xp[pStep] = x;
-            }
-            p += step;
+    float getStackScrollForTask(int position) {
+        if (position < 0 || position >= mTaskCount) {
+            return 0f;
         }
+        return getTaskProgress(position);
     }
 
     /**
-     * Reverses and scales out x.
+     * Returns the progress of the top of the task at the given position.
      */
-    private static float reverse(float x) {
-        return (-x * X_SCALE) + 1;
-    }
-
-    /**
-     * The log function describing the curve.
-     */
-    private static float logFunc(float x) {
-        return 1f - (float) (Math.pow(LOG_BASE, reverse(x))) / (LOG_BASE);
+    private float getTaskProgress(int position) {
+        return FRONT_MOST_CARD_TOP_P + position * mTaskProgressOffset;
     }
 
     /**
      * Converts from the progress along the curve to a screen coordinate.
      */
-    private int curveProgressToScreenY(float p) {
+    int curveProgressToScreenY(float p) {
         if (p < 0 || p > 1) {
             return mStackVisibleRect.top + (int) (p * mStackVisibleRect.height());
         }
-        float pIndex = p * PRECISION_STEPS;
-        int pFloorIndex = (int) Math.floor(pIndex);
-        int pCeilIndex = (int) Math.ceil(pIndex);
-        float xFraction = 0;
-        if (pFloorIndex < PRECISION_STEPS && (pCeilIndex != pFloorIndex)) {
-            float pFraction = (pIndex - pFloorIndex) / (pCeilIndex - pFloorIndex);
-            xFraction = (xp[pCeilIndex] - xp[pFloorIndex]) * pFraction;
-        }
-        float x = xp[pFloorIndex] + xFraction;
+        float x = mCurveTable.progressToX(p, mCurveInterpolation);
         return mStackVisibleRect.top + (int) (x * mStackVisibleRect.height());
     }
 
@@ -375,14 +394,6 @@ class DeckViewLayoutAlgorithm<T> {
         if (x < 0 || x > 1) {
             return x;
         }
-        float xIndex = x * PRECISION_STEPS;
-        int xFloorIndex = (int) Math.floor(xIndex);
-        int xCeilIndex = (int) Math.ceil(xIndex);
-        float pFraction = 0;
-        if (xFloorIndex < PRECISION_STEPS && (xCeilIndex != xFloorIndex)) {
-            float xFraction = (xIndex - xFloorIndex) / (xCeilIndex - xFloorIndex);
-            pFraction = (px[xCeilIndex] - px[xFloorIndex]) * xFraction;
-        }
-        return px[xFloorIndex] + pFraction;
+        return mCurveTable.xToProgress(x, mCurveInterpolation);
     }
 }
\ No newline at end of file
@@ -25,7 +25,16 @@ class DeckViewScroller {
     private DeckViewLayoutAlgorithm mLayoutAlgorithm;
     private DeckViewScrollerCallbacks mCb;
 
+    // Scroll updates further apart than this are not taken as one motion
+    private static final long MAX_VELOCITY_SAMPLE_GAP_NANOS = 100 * 1000 * 1000;
+    // Scroll updates closer than this, such as several in one frame, are taken together
+    private static final long MIN_VELOCITY_SAMPLE_GAP_NANOS = 1000 * 1000;
+
     private float mStackScrollP;
+    // The smoothed scroll velocity, in progress per second, and the last sample it was updated at
+    private float mScrollVelocity;
+    private float mLastVelocitySampleP;
+    private long mLastVelocitySampleNanos;
 
     OverScroller mScroller;
     ObjectAnimator mScrollAnimator;
@@ -43,6 +52,8 @@ class DeckViewScroller {
      */
     void reset() {
         mStackScrollP = 0f;
+        mScrollVelocity = 0f;
+        mLastVelocitySampleNanos = 0;
     }
 
     /**
@@ -63,6 +74,21 @@ class DeckViewScroller {
      * Sets the current stack scroll
      */
     void setStackScroll(float s) {
+        // Jumps that are not a motion of the user, like re-anchoring the stack after the data
+        // changed, do not count towards the scroll velocity
+        mLastVelocitySampleP += s - mStackScrollP;
+        mStackScrollP = s;
+        if (mCb != null) {
+            mCb.onScrollChanged(mStackScrollP);
+        }
+    }
+
+    /**
+     * Sets the current stack scroll as the user drags the stack, which updates the scroll
+     * velocity.
+     */
+    void setStackScrollByUser(float s) {
+        updateScrollVelocity(s);
         mStackScrollP = s;
         if (mCb != null) {
             mCb.onScrollChanged(mStackScrollP);
@@ -70,12 +96,40 @@ class DeckViewScroller {
     }
 
     /**
-     * Sets the current stack scroll without calling the callback.
+     * Sets the current stack scroll of a fling without calling the callback.
      */
     private void setStackScrollRaw(float s) {
+        updateScrollVelocity(s);
         mStackScrollP = s;
     }
 
+    /**
+     * Returns the current scroll velocity, in progress per second, while the stack is dragged or
+     * flung.  Positive when scrolling towards the front most task.
+     */
+    float getScrollVelocity() {
+        if (System.nanoTime() - mLastVelocitySampleNanos > MAX_VELOCITY_SAMPLE_GAP_NANOS) {
+            // The scrolling has stopped
+            return 0f;
+        }
+        return mScrollVelocity;
+    }
+
+    private void updateScrollVelocity(float s) {
+        long now = System.nanoTime();
+        long dt = now - mLastVelocitySampleNanos;
+        if (mLastVelocitySampleNanos == 0 || dt > MAX_VELOCITY_SAMPLE_GAP_NANOS) {
+            mScrollVelocity = 0f;
+        } else if (dt < MIN_VELOCITY_SAMPLE_GAP_NANOS) {
+            return;
+        } else {
+            float velocity = (s - mLastVelocitySampleP) * 1e9f / dt;
+            mScrollVelocity = (mScrollVelocity + velocity) / 2f;
+        }
+        mLastVelocitySampleP = s;
+        mLastVelocitySampleNanos = now;
+    }
+
     /**
      * Sets the current stack scroll to the initial state when you first enter recents.
      *
@@ -252,7 +252,7 @@ class DeckViewTouchHandler implements DeckViewSwipeHelper.Callback {
                         deltaP *= (1f - (Math.min(maxOverScroll, overScrollAmount)
                                 / maxOverScroll));
                     }
-                    mScroller.setStackScroll(curStackScroll + deltaP);
+                    mScroller.setStackScrollByUser(curStackScroll + deltaP);
                 }
                 mLastMotionY = y;
                 mLastP = mDeckView.getStackAlgorithm().screenYToCurveProgress(mLastMotionY);
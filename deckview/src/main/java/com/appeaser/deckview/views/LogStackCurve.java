@@ -0,0 +1,45 @@
+package com.appeaser.deckview.views;
+
+/**
+ * The default stack curve, a log function that is flat at the top of the stack and steep at the
+ * bottom, so that the cards bunch up at the back of the stack.
+ */
+public class LogStackCurve implements StackCurve {
+
+    // The large the x scale, the longer the flat area of the curve
+    private static final float DEFAULT_X_SCALE = 1.75f;
+    private static final float DEFAULT_LOG_BASE = 3000;
+
+    private final float mXScale;
+    private final float mLogBase;
+
+    public LogStackCurve() {
+        this(DEFAULT_X_SCALE, DEFAULT_LOG_BASE);
+    }
+
+    public LogStackCurve(float xScale, float logBase) {
+        mXScale = xScale;
+        mLogBase = logBase;
+    }
+
+    @Override
+    public float evaluate(float x) {
+        // Reverse and scale out x
+        float reversed = (-x * mXScale) + 1;
+        return 1f - (float) (Math.pow(mLogBase, reversed)) / (mLogBase);
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) return true;
+        if (o == null || getClass() != o.getClass()) return false;
+        LogStackCurve that = (LogStackCurve) o;
+        return Float.compare(that.mXScale, mXScale) == 0
+                && Float.compare(that.mLogBase, mLogBase) == 0;
+    }
+
+    @Override
+    public int hashCode() {
+        return 31 * Float.floatToIntBits(mXScale) + Float.floatToIntBits(mLogBase);
+    }
+}
@@ -0,0 +1,180 @@
+package com.appeaser.deckview.views;
+
+import android.os.Handler;
+import android.os.Looper;
+import android.util.SparseArray;
+import android.util.SparseBooleanArray;
+
+import java.util.List;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Executors;
+
+/**
+ * An adapter for very large decks, which only knows the total number of items up front and
+ * loads the items in pages around the visible part of the stack.  Positions whose page is not
+ * loaded yet are bound as placeholders (with a null item), and pages far away from the visible
+ * part of the stack are evicted again.
+ * <p>
+ * Since placeholders have no item, subclasses should provide stable ids if the deck is to keep
+ * track of its items across data set changes.
+ */
+public abstract class PagedDeckAdapter<T> extends DeckView.Adapter<T> {
+
+    private static final Executor sPageExecutor = Executors.newSingleThreadExecutor();
+
+    private final Handler mMainHandler = new Handler(Looper.getMainLooper());
+    private final int mItemCount;
+    private final int mPageSize;
+    private final int mPrefetchPages;
+    private final int mMaxLoadedPages;
+
+    // The loaded pages, and the pages that are being loaded, by page index
+    private final SparseArray<List<T>> mPages = new SparseArray<>();
+    private final SparseBooleanArray mLoadingPages = new SparseBooleanArray();
+
+    // The range of pages around the visible part of the stack, read by the loader thread to
+    // skip pages that are no longer wanted
+    private volatile int mFirstWantedPage = -1;
+    private volatile int mLastWantedPage = -1;
+
+    public PagedDeckAdapter(int itemCount, int pageSize) {
+        this(itemCount, pageSize, 1, 8);
+    }
+
+    /**
+     * @param itemCount      the total number of items in the deck
+     * @param pageSize       the number of items per page
+     * @param prefetchPages  the number of pages to load on either side of the visible pages
+     * @param maxLoadedPages the number of pages to keep before the farthest ones are evicted
+     */
+    public PagedDeckAdapter(int itemCount, int pageSize, int prefetchPages, int maxLoadedPages) {
+        if (pageSize <= 0) {
+            throw new IllegalArgumentException("pageSize must be positive");
+        }
+        mItemCount = itemCount;
+        mPageSize = pageSize;
+        mPrefetchPages = Math.max(0, prefetchPages);
+        mMaxLoadedPages = Math.max(2 * mPrefetchPages + 1, maxLoadedPages);
+    }
+
+    /**
+     * Loads the items from positionStart to positionStart + count - 1.  Called on a background
+     * thread, may return null if the page could not be loaded.
+     */
+    protected abstract List<T> loadPage(int positionStart, int count);
+
+    @Override
+    public int getItemCount() {
+        return mItemCount;
+    }
+
+    @Override
+    public T getItem(int position) {
+        List<T> page = mPages.get(position / mPageSize);
+        int offset = position % mPageSize;
+        return (page != null && offset < page.size()) ? page.get(offset) : null;
+    }
+
+    /**
+     * Returns whether the page containing the given position is loaded.
+     */
+    public boolean isLoaded(int position) {
+        return mPages.get(position / mPageSize) != null;
+    }
+
+    @Override
+    void indexPositions(DeckPositionIndex index) {
+        // Only the items of the loaded pages are known, placeholders can not be tracked
+        int pageCount = mPages.size();
+        for (int i = 0; i < pageCount; i++) {
+            int positionStart = mPages.keyAt(i) * mPageSize;
+            index.addRange(this, positionStart, positionStart + mPages.valueAt(i).size());
+        }
+    }
+
+    @Override
+    void onVisibleRangeChanged(int firstPosition, int lastPosition) {
+        int pageCount = (mItemCount + mPageSize - 1) / mPageSize;
+        int firstPage = Math.max(0, firstPosition / mPageSize - mPrefetchPages);
+        int lastPage = Math.min(pageCount - 1, lastPosition / mPageSize + mPrefetchPages);
+        if (firstPage == mFirstWantedPage && lastPage == mLastWantedPage) return;
+        mFirstWantedPage = firstPage;
+        mLastWantedPage = lastPage;
+
+        // Request the visible pages first, then the ones around them
+        int firstVisiblePage = firstPosition / mPageSize;
+        int lastVisiblePage = lastPosition / mPageSize;
+        for (int page = lastVisiblePage; page >= firstVisiblePage; page--) {
+            requestPage(page);
+        }
+        for (int i = 1; i <= mPrefetchPages; i++) {
+            if (lastVisiblePage + i <= lastPage) requestPage(lastVisiblePage + i);
+            if (firstVisiblePage - i >= firstPage) requestPage(firstVisiblePage - i);
+        }
+        evictFarPages();
+    }
+
+    private void requestPage(final int page) {
+        if (mPages.get(page) != null || mLoadingPages.get(page)) return;
+        mLoadingPages.put(page, true);
+
+        final int positionStart = page * mPageSize;
+        final int count = Math.min(mPageSize, mItemCount - positionStart);
+        sPageExecutor.execute(new Runnable() {
+            @Override
+            public void run() {
+                // Skip the pages that were scrolled away from while they were queued
+                final List<T> items = (mFirstWantedPage <= page && page <= mLastWantedPage) ?
+                        loadPage(positionStart, count) : null;
+                mMainHandler.post(new Runnable() {
+                    @Override
+                    public void run() {
+                        onPageLoaded(page, items);
+                    }
+                });
+            }
+        });
+    }
+
+    private void onPageLoaded(int page, List<T> items) {
+        mLoadingPages.delete(page);
+        if (items == null) return;
+        mPages.put(page, items);
+
+        // Bind the loaded items to the placeholders of the page, this only rebinds the attached
+        // views of the page and does not lay out the stack again
+        if (mDeckView != null) {
+            mDeckView.notifyItemRangeChanged(page * mPageSize, items.size());
+        }
+        evictFarPages();
+    }
+
+    /**
+     * Evicts the pages farthest from the visible part of the stack until at most
+     * mMaxLoadedPages remain.
+     */
+    private void evictFarPages() {
+        while (mPages.size() > mMaxLoadedPages) {
+            int farthestIndex = -1;
+            int farthestDistance = 0;
+            int pageCount = mPages.size();
+            for (int i = 0; i < pageCount; i++) {
+                int page = mPages.keyAt(i);
+                int distance = Math.max(mFirstWantedPage - page, page - mLastWantedPage);
+                if (distance > farthestDistance) {
+                    farthestDistance = distance;
+                    farthestIndex = i;
+                }
+            }
+            if (farthestIndex < 0) return;
+
+            int page = mPages.keyAt(farthestIndex);
+            int count = mPages.valueAt(farthestIndex).size();
+            mPages.removeAt(farthestIndex);
+            // Turn any views still bound to the evicted items back into placeholders
+            if (mDeckView != null) {
+                mDeckView.notifyItemRangeChanged(page * mPageSize, count);
+            }
+        }
+    }
+}
@@ -0,0 +1,79 @@
+package com.appeaser.deckview.views;
+
+import android.util.SparseArray;
+import android.util.SparseIntArray;
+
+import java.util.ArrayList;
+
+/**
+ * A pool of unbound DeckChildViews that can be shared between several DeckViews, for example
+ * the pages of a ViewPager, so that a deck can reuse the cards inflated by another deck instead
+ * of inflating its own.  The views are kept per view type, with a maximum number of views per
+ * type.  DeckView uses {@link #DEFAULT_VIEW_TYPE}.
+ * <p>
+ * Views are not thread safe and hold on to the Context they were inflated with, so a pool
+ * should only be shared between decks of the same Activity, on the main thread.
+ */
+public class RecycledDeckViewPool {
+
+    public static final int DEFAULT_VIEW_TYPE = 0;
+    private static final int DEFAULT_MAX_RECYCLED_VIEWS = 10;
+
+    private SparseArray<ArrayList<DeckChildView>> mScrap = new SparseArray<>();
+    private SparseIntArray mMaxScrap = new SparseIntArray();
+
+    /**
+     * Sets the maximum number of views of the given type that are kept, dropping the views
+     * above the new maximum.
+     */
+    public void setMaxRecycledViews(int viewType, int max) {
+        mMaxScrap.put(viewType, max);
+        ArrayList<DeckChildView> scrap = mScrap.get(viewType);
+        if (scrap != null) {
+            while (scrap.size() > max) {
+                scrap.remove(scrap.size() - 1);
+            }
+        }
+    }
+
+    /**
+     * Returns the number of views of the given type in the pool.
+     */
+    public int getRecycledViewCount(int viewType) {
+        ArrayList<DeckChildView> scrap = mScrap.get(viewType);
+        return scrap != null ? scrap.size() : 0;
+    }
+
+    /**
+     * Removes a view of the given type from the pool, or returns null if there is none.
+     */
+    public DeckChildView getRecycledView(int viewType) {
+        ArrayList<DeckChildView> scrap = mScrap.get(viewType);
+        if (scrap != null && !scrap.isEmpty()) {
+            return scrap.remove(scrap.size() - 1);
+        }
+        return null;
+    }
+
+    /**
+     * Adds an unbound view of the given type, which has no parent, to the pool.  The view is
+     * dropped if the pool already has the maximum number of views of the type.
+     */
+    public void putRecycledView(int viewType, DeckChildView view) {
+        ArrayList<DeckChildView> scrap = mScrap.get(viewType);
+        if (scrap == null) {
+            scrap = new ArrayList<>();
+            mScrap.put(viewType, scrap);
+        }
+        if (scrap.size() < mMaxScrap.get(viewType, DEFAULT_MAX_RECYCLED_VIEWS)) {
+            scrap.add(view);
+        }
+    }
+
+    /**
+     * Drops all the views in the pool.
+     */
+    public void clear() {
+        mScrap.clear();
+    }
+}
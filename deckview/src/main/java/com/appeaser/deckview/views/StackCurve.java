@@ -0,0 +1,34 @@
+package com.appeaser.deckview.views;
+
+/**
+ * The curve along which the cards of the deck are laid out.  The curve maps x in 0..1, the
+ * position from the top (x = 0) to the bottom (x = 1) of the stack rect, to f(x) in 0..1.  The
+ * cards are spaced evenly along the arc length of the curve, which is tabulated once per curve
+ * and resolution, so the curve itself is never evaluated per frame.
+ * <p>
+ * Tables are shared between decks by curve, so implementations with parameters must implement
+ * equals() and hashCode().
+ */
+public interface StackCurve {
+
+    /**
+     * Interpolates linearly between the table entries.
+     */
+    int INTERPOLATION_LINEAR = 0;
+
+    /**
+     * Interpolates with monotone cubic splines between the table entries, which is more precise
+     * for a given resolution at a slightly higher cost per lookup.
+     */
+    int INTERPOLATION_CUBIC = 1;
+
+    /**
+     * The default number of table steps.
+     */
+    int DEFAULT_RESOLUTION = 250;
+
+    /**
+     * Returns f(x) for x in 0..1.
+     */
+    float evaluate(float x);
+}
@@ -0,0 +1,163 @@
+package com.appeaser.deckview.views;
+
+import android.util.SparseArray;
+
+import java.util.HashMap;
+
+/**
+ * The lookup tables of a stack curve at a given resolution, mapping the progress p along the arc
+ * of the curve to x and back.  Tables are immutable, built once per curve and resolution and
+ * shared by all decks.
+ */
+final class StackCurveTable {
+
+    private static final HashMap<StackCurve, SparseArray<StackCurveTable>> sTables =
+            new HashMap<>();
+
+    // The number of arc length samples per table step
+    private static final int OVERSAMPLING = 8;
+
+    final int steps;
+    // x(p) and p(x), sampled at steps + 1 evenly spaced points
+    final float[] xp;
+    final float[] px;
+    // The tangents of x(p) and p(x) at the sample points, for the cubic interpolation
+    private final float[] mXpTangents;
+    private final float[] mPxTangents;
+
+    /**
+     * Returns the shared table of the given curve at the given resolution, building it on first
+     * use.
+     */
+    static StackCurveTable get(StackCurve curve, int resolution) {
+        synchronized (sTables) {
+            SparseArray<StackCurveTable> tables = sTables.get(curve);
+            if (tables == null) {
+                tables = new SparseArray<>();
+                sTables.put(curve, tables);
+            }
+            StackCurveTable table = tables.get(resolution);
+            if (table == null) {
+                table = new StackCurveTable(curve, resolution);
+                tables.put(resolution, table);
+            }
+            return table;
+        }
+    }
+
+    StackCurveTable(StackCurve curve, int resolution) {
+        if (resolution < 2) {
+            throw new IllegalArgumentException("The curve resolution must be at least 2");
+        }
+        steps = resolution;
+        xp = new float[steps + 1];
+        px = new float[steps + 1];
+
+        // Approximate the arc length of f(x) from x = 0 on a finer grid than the tables, so that
+        // the table entries themselves are accurate
+        int fineSteps = steps * OVERSAMPLING;
+        double[] arcLength = new double[fineSteps + 1];
+        double prevF = curve.evaluate(0f);
+        for (int i = 1; i <= fineSteps; i++) {
+            double f = curve.evaluate((float) i / fineSteps);
+            double df = f - prevF;
+            double dx = 1.0 / fineSteps;
+            arcLength[i] = arcLength[i - 1] + Math.sqrt(df * df + dx * dx);
+            prevF = f;
+        }
+        double totalLength = arcLength[fineSteps];
+
+        // p(x), the cumulative progress along the arc, normalized to 0..1
+        for (int xStep = 0; xStep <= steps; xStep++) {
+            px[xStep] = (float) (arcLength[xStep * OVERSAMPLING] / totalLength);
+        }
+        px[steps] = 1f;
+
+        // Given p(x), calculate the inverse function x(p). This assumes that x(p) is also a valid
+        // function.
+        int i = 0;
+        for (int pStep = 0; pStep < steps; pStep++) {
+            double targetLength = totalLength * pStep / steps;
+            // Walk forward and find the fine step where the arc length reaches the target
+            while (i < fineSteps && arcLength[i + 1] < targetLength) {
+                i++;
+            }
+            double segment = arcLength[i + 1] - arcLength[i];
+            double fraction = segment > 0 ? (targetLength - arcLength[i]) / segment : 0;
+            xp[pStep] = (float) ((i + fraction) / fineSteps);
+        }
+        xp[steps] = 1f;
+
+        mXpTangents = computeMonotoneTangents(xp);
+        mPxTangents = computeMonotoneTangents(px);
+    }
+
+    /**
+     * Returns x for the progress p in 0..1.
+     */
+    float progressToX(float p, int interpolation) {
+        return lookup(xp, mXpTangents, p, interpolation);
+    }
+
+    /**
+     * Returns the progress p for x in 0..1.
+     */
+    float xToProgress(float x, int interpolation) {
+        return lookup(px, mPxTangents, x, interpolation);
+    }
+
+    private float lookup(float[] values, float[] tangents, float v, int interpolation) {
+        float index = v * steps;
+        int floorIndex = (int) index;
+        if (floorIndex >= steps) {
+            return values[steps];
+        }
+        float t = index - floorIndex;
+        float y0 = values[floorIndex];
+        float y1 = values[floorIndex + 1];
+        if (interpolation != StackCurve.INTERPOLATION_CUBIC) {
+            return y0 + (y1 - y0) * t;
+        }
+
+        // Cubic Hermite spline on the unit interval between the two samples
+        float t2 = t * t;
+        float t3 = t2 * t;
+        return (2 * t3 - 3 * t2 + 1) * y0 + (t3 - 2 * t2 + t) * tangents[floorIndex]
+                + (-2 * t3 + 3 * t2) * y1 + (t3 - t2) * tangents[floorIndex + 1];
+    }
+
+    /**
+     * Computes the tangents of a monotone cubic spline through the given samples (per sample,
+     * in units of the sample spacing), using the Fritsch-Carlson method so that the spline
+     * never overshoots and stays invertible.
+     */
+    private static float[] computeMonotoneTangents(float[] values) {
+        int n = values.length - 1;
+        float[] deltas = new float[n];
+        for (int i = 0; i < n; i++) {
+            deltas[i] = values[i + 1] - values[i];
+        }
+        float[] tangents = new float[n + 1];
+        tangents[0] = deltas[0];
+        tangents[n] = deltas[n - 1];
+        for (int i = 1; i < n; i++) {
+            tangents[i] = (deltas[i - 1] * deltas[i] <= 0) ? 0 : (deltas[i - 1] + deltas[i]) / 2;
+        }
+        for (int i = 0; i < n; i++) {
+            if (deltas[i] == 0) {
+                tangents[i] = 0;
+                tangents[i + 1] = 0;
+                continue;
+            }
+            float a = tangents[i] / deltas[i];
+            float b = tangents[i + 1] / deltas[i];
+            float s = a * a + b * b;
+            if (s > 9) {
+                float tau = 3 / (float) Math.sqrt(s);
+                tangents[i] = tau * a * deltas[i];
+                tangents[i + 1] = tau * b * deltas[i];
+            }
+        }
+        return tangents;
+    }
+}
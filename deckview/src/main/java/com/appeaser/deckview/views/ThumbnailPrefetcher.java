@@ -0,0 +1,123 @@
+package com.appeaser.deckview.views;
+
+import android.graphics.Rect;
+import android.view.Display;
+
+import com.appeaser.deckview.helpers.ThumbnailLoader;
+
+/**
+ * Prefetches the thumbnails of the cards that are about to scroll into view, so that fast flings
+ * do not show placeholder cards.  On each synchronization of the stack views, the scroll
+ * velocity is projected ahead, and the layout algorithm maps the projected scroll to the cards
+ * that will then be visible.  The cards beyond the visible ones in the scroll direction are
+ * prefetched nearest first, up to a budget of requests per frame, which is halved whenever a
+ * frame is late and grows back by one for every frame that is on time.
+ */
+class ThumbnailPrefetcher<T> {
+
+    // How far ahead the scroll is projected
+    static final float LOOKAHEAD_SECONDS = 0.5f;
+    // The most cards that are prefetched ahead of the visible ones
+    static final int MAX_PREFETCH_COUNT = 8;
+    // The most prefetches requested per frame
+    static final int MAX_REQUESTS_PER_FRAME = 4;
+    // A frame is late if it takes this many times the frame interval
+    static final float LATE_FRAME_FACTOR = 1.5f;
+    // Gaps between synchronizations longer than this are pauses, not late frames
+    private static final long MAX_FRAME_GAP_NANOS = 100 * 1000 * 1000;
+    private static final float DEFAULT_REFRESH_RATE = 60f;
+    private static final int NO_POSITION = Integer.MIN_VALUE;
+
+    private final DeckView<T> mDeckView;
+    private int mBudget = MAX_REQUESTS_PER_FRAME;
+    private long mLastFrameNanos;
+    // The scroll direction of the current prefetches, and the next position to prefetch
+    private int mDirection;
+    private int mNextPosition;
+    private int[] mTmpRange = new int[2];
+
+    ThumbnailPrefetcher(DeckView<T> deckView) {
+        mDeckView = deckView;
+    }
+
+    /**
+     * Called after the stack views were synchronized with the given visible range (front most
+     * and back most position) at the given stack scroll.
+     */
+    void onStackViewsSynchronized(int[] visibleRange, float stackScroll) {
+        updateBudget();
+
+        ThumbnailLoader<T> loader = mDeckView.mThumbnailLoader;
+        float velocity = mDeckView.mStackScroller.getScrollVelocity();
+        if (loader == null || loader.getCache() == null || velocity == 0f
+                || visibleRange[1] < 0 || visibleRange[0] < visibleRange[1]) {
+            mDirection = 0;
+            return;
+        }
+        int direction = velocity > 0 ? 1 : -1;
+        if (direction != mDirection) {
+            // The prefetched cards are now behind the scroll
+            loader.cancelPrefetches();
+            mDirection = direction;
+            mNextPosition = NO_POSITION;
+        }
+
+        // The cards that will be visible after the projected scroll
+        DeckViewLayoutAlgorithm layoutAlgorithm = mDeckView.mLayoutAlgorithm;
+        layoutAlgorithm.getCandidateTaskRange(stackScroll + velocity * LOOKAHEAD_SECONDS,
+                mTmpRange);
+        int first;
+        int last;
+        if (direction > 0) {
+            first = visibleRange[0] + 1;
+            last = Math.min(mTmpRange[0], visibleRange[0] + MAX_PREFETCH_COUNT);
+            if (mNextPosition > first) first = mNextPosition;
+        } else {
+            first = visibleRange[1] - 1;
+            last = Math.max(mTmpRange[1], visibleRange[1] - MAX_PREFETCH_COUNT);
+            if (mNextPosition != NO_POSITION && mNextPosition < first) first = mNextPosition;
+        }
+
+        DeckView.Adapter<T> adapter = mDeckView.mAdapter;
+        Rect taskRect = layoutAlgorithm.mTaskRect;
+        int requests = 0;
+        int position = first;
+        while (requests < mBudget && (last - position) * direction >= 0
+                && position >= 0 && position < adapter.getItemCount()) {
+            T item = adapter.getItem(position);
+            // Placeholders are loaded with their page
+            if (item != null) {
+                loader.prefetch(item, taskRect.width(), taskRect.height());
+                requests++;
+            }
+            position += direction;
+        }
+        mNextPosition = position;
+    }
+
+    /**
+     * Halves the budget if the time since the last synchronization shows a late frame, or else
+     * grows it by one.
+     */
+    private void updateBudget() {
+        long now = System.nanoTime();
+        long gap = now - mLastFrameNanos;
+        if (mLastFrameNanos != 0 && gap < MAX_FRAME_GAP_NANOS) {
+            if (gap > getFrameIntervalNanos() * LATE_FRAME_FACTOR) {
+                mBudget /= 2;
+            } else if (mBudget < MAX_REQUESTS_PER_FRAME) {
+                mBudget++;
+            }
+        }
+        mLastFrameNanos = now;
+    }
+
+    private long getFrameIntervalNanos() {
+        Display display = mDeckView.getDisplay();
+        float refreshRate = display != null ? display.getRefreshRate() : DEFAULT_REFRESH_RATE;
+        if (refreshRate < 1f) {
+            refreshRate = DEFAULT_REFRESH_RATE;
+        }
+        return (long) (1e9 / refreshRate);
+    }
+}
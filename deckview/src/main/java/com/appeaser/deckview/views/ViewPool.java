@@ -3,7 +3,7 @@ package com.appeaser.deckview.views;
 import android.content.Context;
 
 import java.util.Iterator;
-import java.util.LinkedList;
+import java.util.NoSuchElementException;
 
 /**
  * 视图管理池
@@ -18,16 +18,65 @@ class ViewPool<V, T> {
     interface ViewPoolConsumer<V, T> {
         V createView(Context context);
 
+        /**
+         * Removes the view from the hierarchy, the view stays bound to its data.
+         */
+        void prepareViewToEnterScrap(V v);
+
+        /**
+         * Unbinds the view from its data, after it was removed from the hierarchy.
+         */
         void prepareViewToEnterPool(V v);
 
-        void prepareViewToLeavePool(V v, T prepareData, boolean isNewView);
+        /**
+         * Binds the view to the data and adds it to the hierarchy.  If isDataBound is set, the
+         * view comes from the scrap and is still bound to the same data.
+         */
+        void prepareViewToLeavePool(V v, T prepareData, int position, boolean isNewView,
+                                    boolean isDataBound);
+
+        /**
+         * Returns the data that the view is bound to, called before the view enters the pool
+         * so that the view can be found again by its data.  May return null.
+         */
+        T getPreferredData(V v);
 
-        boolean hasPreferredData(V v, T preferredData);
+        /**
+         * Releases a view that is dropped from the pool.  If isNewView is set, the view was
+         * never added to the hierarchy.
+         */
+        void discardView(V v, boolean isNewView);
+
+        /**
+         * Returns the number of bytes of data, like bitmaps, that the view holds on to.
+         */
+        long getRetainedBytes(V v);
     }
 
+    private static final int INITIAL_CAPACITY = 8;
+    static final int DEFAULT_SCRAP_CAPACITY = 2;
+    static final int DEFAULT_MAX_POOL_SIZE = 16;
+
     private Context mContext;
     private ViewPoolConsumer<V, T> mViewCreator;
-    private LinkedList<V> mPool = new LinkedList<>();
+
+    // The pooled views, used as a stack, the data that each view was bound to, and whether the
+    // view was never added to the hierarchy
+    private Object[] mViews = new Object[INITIAL_CAPACITY];
+    private Object[] mViewData = new Object[INITIAL_CAPACITY];
+    private boolean[] mNewViews = new boolean[INITIAL_CAPACITY];
+    private int mSize;
+    private int mMaxSize = DEFAULT_MAX_POOL_SIZE;
+
+    // An open addressing hash index from the data of the pooled views to their slot in the stack,
+    // with linear probing.  The table is kept at most half full.
+    private Object[] mIndexKeys = new Object[INITIAL_CAPACITY * 2];
+    private int[] mIndexSlots = new int[INITIAL_CAPACITY * 2];
+
+    // The scrap, recently removed views that are still bound to their data, oldest first
+    private Object[] mScrapViews = new Object[DEFAULT_SCRAP_CAPACITY];
+    private Object[] mScrapData = new Object[DEFAULT_SCRAP_CAPACITY];
+    private int mScrapSize;
 
     /**
      * Initializes the pool with a fixed predetermined pool size
@@ -41,46 +90,337 @@ class ViewPool<V, T> {
      * Returns a view into the pool
      */
     void returnViewToPool(V v) {
+        T data = mViewCreator.getPreferredData(v);
+        mViewCreator.prepareViewToEnterScrap(v);
+        mViewCreator.prepareViewToEnterPool(v);
+        push(v, data, false);
+    }
+
+    /**
+     * Returns a view into the scrap, where it stays bound to its data so that it can be picked
+     * up again for the same data without reloading it.  The oldest scrap view is moved to the
+     * pool if the scrap is full.
+     */
+    void returnViewToScrap(V v) {
+        T data = mViewCreator.getPreferredData(v);
+        if (data == null || mScrapViews.length == 0) {
+            returnViewToPool(v);
+            return;
+        }
+        mViewCreator.prepareViewToEnterScrap(v);
+        if (mScrapSize == mScrapViews.length) {
+            demoteScrapView(0);
+        }
+        mScrapViews[mScrapSize] = v;
+        mScrapData[mScrapSize] = data;
+        mScrapSize++;
+    }
+
+    /**
+     * Sets the number of views kept in the scrap, moving the oldest scrap views to the pool if
+     * there are more
+     */
+    void setScrapCapacity(int capacity) {
+        while (mScrapSize > capacity) {
+            demoteScrapView(0);
+        }
+        Object[] scrapViews = new Object[capacity];
+        Object[] scrapData = new Object[capacity];
+        System.arraycopy(mScrapViews, 0, scrapViews, 0, mScrapSize);
+        System.arraycopy(mScrapData, 0, scrapData, 0, mScrapSize);
+        mScrapViews = scrapViews;
+        mScrapData = scrapData;
+    }
+
+    /**
+     * Moves all scrap views to the pool, for when the data they are bound to may have changed
+     */
+    void clearScrap() {
+        while (mScrapSize > 0) {
+            demoteScrapView(mScrapSize - 1);
+        }
+    }
+
+    /**
+     * Returns the scrap view at the given index, the oldest is at index 0
+     */
+    @SuppressWarnings("unchecked")
+    V getScrapView(int index) {
+        return (V) mScrapViews[index];
+    }
+
+    /**
+     * Moves the scrap view at the given index to the pool, for when its data has changed
+     */
+    void clearScrapView(int index) {
+        demoteScrapView(index);
+    }
+
+    /**
+     * Moves the scrap view at the given index to the pool
+     */
+    @SuppressWarnings("unchecked")
+    private void demoteScrapView(int index) {
+        V v = removeScrapView(index);
+        T data = (T) mScrapData[mScrapSize];
+        mScrapData[mScrapSize] = null;
         mViewCreator.prepareViewToEnterPool(v);
-        mPool.push(v);
+        push(v, data, false);
+    }
+
+    /**
+     * Removes the scrap view at the given index, its data is left at mScrapData[mScrapSize]
+     */
+    @SuppressWarnings("unchecked")
+    private V removeScrapView(int index) {
+        V v = (V) mScrapViews[index];
+        Object data = mScrapData[index];
+        int last = --mScrapSize;
+        System.arraycopy(mScrapViews, index + 1, mScrapViews, index, last - index);
+        System.arraycopy(mScrapData, index + 1, mScrapData, index, last - index);
+        mScrapViews[last] = null;
+        mScrapData[last] = data;
+        return v;
+    }
+
+    /**
+     * Adds a view that was created ahead of time, and was never added to the hierarchy
+     */
+    void addCreatedView(V v) {
+        push(v, null, true);
+    }
+
+    /**
+     * Returns the number of views in the pool, not including the scrap
+     */
+    int size() {
+        return mSize;
+    }
+
+    /**
+     * Returns the number of views in the scrap
+     */
+    int scrapSize() {
+        return mScrapSize;
+    }
+
+    /**
+     * Returns the number of bytes of data that the views in the pool and the scrap hold on to
+     */
+    @SuppressWarnings("unchecked")
+    long getRetainedBytes() {
+        long bytes = 0;
+        for (int i = 0; i < mSize; i++) {
+            bytes += mViewCreator.getRetainedBytes((V) mViews[i]);
+        }
+        for (int i = 0; i < mScrapSize; i++) {
+            bytes += mViewCreator.getRetainedBytes((V) mScrapViews[i]);
+        }
+        return bytes;
+    }
+
+    /**
+     * Sets the maximum number of views in the pool, views returned to a full pool are discarded
+     */
+    void setMaxSize(int maxSize) {
+        mMaxSize = maxSize;
+        trimToSize(maxSize);
+    }
+
+    /**
+     * Discards pooled views until at most maxSize views are left in the pool
+     */
+    void trimToSize(int maxSize) {
+        while (mSize > Math.max(0, maxSize)) {
+            boolean isNewView = mNewViews[mSize - 1];
+            V v = removeSlot(mSize - 1);
+            mViewCreator.discardView(v, isNewView);
+        }
+    }
+
+    private void push(V v, T data, boolean isNewView) {
+        if (mSize >= mMaxSize) {
+            mViewCreator.discardView(v, isNewView);
+            return;
+        }
+        if (mSize == mViews.length) {
+            grow();
+        }
+        int slot = mSize++;
+        mViews[slot] = v;
+        mViewData[slot] = data;
+        mNewViews[slot] = isNewView;
+        if (data != null) {
+            indexPut(data, slot);
+        }
     }
 
     /**
      * Gets a view from the pool and prepares it
      */
-    V pickUpViewFromPool(T preferredData, T prepareData) {
-        V v = null;
+    V pickUpViewFromPool(T preferredData, T prepareData, int position) {
+        // Reuse the scrap view that is still bound to the data
+        if (preferredData != null && preferredData.equals(prepareData)) {
+            for (int i = mScrapSize - 1; i >= 0; i--) {
+                if (preferredData.equals(mScrapData[i])) {
+                    V v = removeScrapView(i);
+                    mScrapData[mScrapSize] = null;
+                    mViewCreator.prepareViewToLeavePool(v, prepareData, position, false, true);
+                    return v;
+                }
+            }
+        }
+
+        // Otherwise take a view from the pool, if the pool is empty the oldest scrap view is
+        // rebound before a new view is created
+        if (mSize == 0 && mScrapSize > 0) {
+            demoteScrapView(0);
+        }
+        V v;
         boolean isNewView = false;
-        if (mPool.isEmpty()) {
+        if (mSize == 0) {
             v = mViewCreator.createView(mContext);
             isNewView = true;
         } else {
-            // Try and find a preferred view
-            Iterator<V> iter = mPool.iterator();
-            while (iter.hasNext()) {
-                V vpv = iter.next();
-                if (mViewCreator.hasPreferredData(vpv, preferredData)) {
-                    v = vpv;
-                    iter.remove();
-                    break;
-                }
-            }
-            // Otherwise, just grab the first view
-            if (v == null) {
-                v = mPool.pop();
+            // Try and find the view that was bound to the preferred data, otherwise just grab the
+            // last pooled view
+            int slot = preferredData != null ? indexGet(preferredData) : -1;
+            if (slot < 0) {
+                slot = mSize - 1;
             }
+            isNewView = mNewViews[slot];
+            v = removeSlot(slot);
         }
-        mViewCreator.prepareViewToLeavePool(v, prepareData, isNewView);
+        mViewCreator.prepareViewToLeavePool(v, prepareData, position, isNewView, false);
         return v;
     }
 
     /**
-     * Returns an iterator to the list of the views in the pool.
+     * Returns an iterator to the list of the views in the pool, not including the scrap.
      */
     Iterator<V> poolViewIterator() {
-        if (mPool != null) {
-            return mPool.iterator();
+        return new Iterator<V>() {
+            int mNext = mSize - 1;
+
+            @Override
+            public boolean hasNext() {
+                return mNext >= 0;
+            }
+
+            @Override
+            @SuppressWarnings("unchecked")
+            public V next() {
+                if (mNext < 0) {
+                    throw new NoSuchElementException();
+                }
+                return (V) mViews[mNext--];
+            }
+
+            @Override
+            public void remove() {
+                throw new UnsupportedOperationException();
+            }
+        };
+    }
+
+    /**
+     * Removes the view in the given slot, by moving the last view into its place.
+     */
+    @SuppressWarnings("unchecked")
+    private V removeSlot(int slot) {
+        V v = (V) mViews[slot];
+        Object data = mViewData[slot];
+        if (data != null && indexGet(data) == slot) {
+            indexRemove(data);
+        }
+
+        int last = --mSize;
+        if (slot != last) {
+            Object lastData = mViewData[last];
+            mViews[slot] = mViews[last];
+            mViewData[slot] = lastData;
+            mNewViews[slot] = mNewViews[last];
+            if (lastData != null && indexGet(lastData) == last) {
+                indexPut(lastData, slot);
+            }
+        }
+        mViews[last] = null;
+        mViewData[last] = null;
+        return v;
+    }
+
+    private void grow() {
+        int capacity = mViews.length * 2;
+        Object[] views = new Object[capacity];
+        Object[] viewData = new Object[capacity];
+        boolean[] newViews = new boolean[capacity];
+        System.arraycopy(mViews, 0, views, 0, mSize);
+        System.arraycopy(mViewData, 0, viewData, 0, mSize);
+        System.arraycopy(mNewViews, 0, newViews, 0, mSize);
+        mViews = views;
+        mViewData = viewData;
+        mNewViews = newViews;
+
+        // Rehash the index into a table that is again at most half full
+        mIndexKeys = new Object[capacity * 2];
+        mIndexSlots = new int[capacity * 2];
+        for (int i = 0; i < mSize; i++) {
+            Object data = mViewData[i];
+            if (data != null) {
+                indexPut(data, i);
+            }
+        }
+    }
+
+    private int indexOf(Object key) {
+        int mask = mIndexKeys.length - 1;
+        int h = key.hashCode();
+        return (h ^ (h >>> 16)) & mask;
+    }
+
+    private int indexGet(Object key) {
+        int mask = mIndexKeys.length - 1;
+        for (int i = indexOf(key); mIndexKeys[i] != null; i = (i + 1) & mask) {
+            if (mIndexKeys[i].equals(key)) {
+                return mIndexSlots[i];
+            }
+        }
+        return -1;
+    }
+
+    private void indexPut(Object key, int slot) {
+        int mask = mIndexKeys.length - 1;
+        int i = indexOf(key);
+        while (mIndexKeys[i] != null && !mIndexKeys[i].equals(key)) {
+            i = (i + 1) & mask;
+        }
+        mIndexKeys[i] = key;
+        mIndexSlots[i] = slot;
+    }
+
+    private void indexRemove(Object key) {
+        int mask = mIndexKeys.length - 1;
+        int i = indexOf(key);
+        while (mIndexKeys[i] != null && !mIndexKeys[i].equals(key)) {
+            i = (i + 1) & mask;
+        }
+        if (mIndexKeys[i] == null) return;
+        mIndexKeys[i] = null;
+
+        // Shift back the entries of the probe run after the removed one, so that lookups do not
+        // stop early at the hole
+        int j = (i + 1) & mask;
+        while (mIndexKeys[j] != null) {
+            int home = indexOf(mIndexKeys[j]);
+            // Move the entry into the hole unless its home lies cyclically in (i, j]
+            boolean homeBetween = (i <= j) ? (i < home && home <= j) : (i < home || home <= j);
+            if (!homeBetween) {
+                mIndexKeys[i] = mIndexKeys[j];
+                mIndexSlots[i] = mIndexSlots[j];
+                mIndexKeys[j] = null;
+                i = j;
+            }
+            j = (j + 1) & mask;
         }
-        return null;
     }
 }
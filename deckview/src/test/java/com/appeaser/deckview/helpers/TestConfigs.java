@@ -0,0 +1,24 @@
+package com.appeaser.deckview.helpers;
+
+/**
+ * Creates configurations for the JVM tests, which run without an Android context.
+ */
+public final class TestConfigs {
+
+    private TestConfigs() {
+    }
+
+    /**
+     * Returns a configuration with the values read by the layout math filled in, with the
+     * values of an xxhdpi device.
+     */
+    public static DeckViewConfig createLayoutConfig() {
+        DeckViewConfig config = new DeckViewConfig();
+        config.taskStackWidthPaddingPct = 0.03f;
+        config.taskStackTopPaddingPx = 48;
+        config.taskBarHeight = 168;
+        config.taskViewTranslationZMinPx = 9;
+        config.taskViewTranslationZMaxPx = 72;
+        return config;
+    }
+}
@@ -0,0 +1,114 @@
+package com.appeaser.deckview.utilities;
+
+import android.graphics.Bitmap;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+/**
+ * The JVM tests run with an SDK_INT of 0, so the pool only hands out bitmaps of the exact size,
+ * as before KitKat.
+ */
+public class BitmapPoolTest {
+
+    static Bitmap mockBitmap(int width, int height, Bitmap.Config config) {
+        int bytesPerPixel = config == Bitmap.Config.RGB_565 ? 2 : 4;
+        Bitmap bitmap = mock(Bitmap.class);
+        when(bitmap.getWidth()).thenReturn(width);
+        when(bitmap.getHeight()).thenReturn(height);
+        when(bitmap.getConfig()).thenReturn(config);
+        when(bitmap.isMutable()).thenReturn(true);
+        when(bitmap.getByteCount()).thenReturn(width * height * bytesPerPixel);
+        return bitmap;
+    }
+
+    @Test
+    public void getReturnsTheBitmapOfTheExactSize() {
+        BitmapPool pool = new BitmapPool(100000);
+        Bitmap bitmap = mockBitmap(10, 10, Bitmap.Config.ARGB_8888);
+        pool.put(bitmap);
+
+        assertSame(bitmap, pool.get(10, 10, Bitmap.Config.ARGB_8888));
+        assertNull(pool.get(10, 10, Bitmap.Config.ARGB_8888));
+        assertEquals(1, pool.hitCount());
+        assertEquals(1, pool.missCount());
+        assertEquals(0, pool.size());
+    }
+
+    @Test
+    public void bitmapsOfTheSameByteCountShareABucket() {
+        BitmapPool pool = new BitmapPool(100000);
+        Bitmap square = mockBitmap(10, 10, Bitmap.Config.ARGB_8888);
+        Bitmap wide = mockBitmap(20, 5, Bitmap.Config.ARGB_8888);
+        Bitmap rgb565 = mockBitmap(20, 10, Bitmap.Config.RGB_565);
+        pool.put(square);
+        pool.put(wide);
+        pool.put(rgb565);
+        assertEquals(1200, pool.size());
+
+        assertSame(square, pool.get(10, 10, Bitmap.Config.ARGB_8888));
+        assertSame(rgb565, pool.get(20, 10, Bitmap.Config.RGB_565));
+        assertSame(wide, pool.get(20, 5, Bitmap.Config.ARGB_8888));
+        assertEquals(0, pool.size());
+    }
+
+    @Test
+    public void decodingNeedsTheExactSizeBeforeKitKat() {
+        BitmapPool pool = new BitmapPool(100000);
+        Bitmap bitmap = mockBitmap(10, 10, Bitmap.Config.ARGB_8888);
+        pool.put(bitmap);
+
+        // Within twice the byte count, but the decoder could not reuse it
+        assertNull(pool.getForDecode(10, 5, Bitmap.Config.ARGB_8888));
+        assertSame(bitmap, pool.getForDecode(10, 10, Bitmap.Config.ARGB_8888));
+    }
+
+    @Test
+    public void trimDropsTheLargestBitmapsFirst() {
+        BitmapPool pool = new BitmapPool(100000);
+        pool.put(mockBitmap(10, 10, Bitmap.Config.ARGB_8888));
+        pool.put(mockBitmap(20, 20, Bitmap.Config.ARGB_8888));
+        pool.put(mockBitmap(30, 30, Bitmap.Config.ARGB_8888));
+
+        pool.trimToSize(2500);
+        assertEquals(2000, pool.size());
+        assertEquals(1, pool.evictionCount());
+        assertNull(pool.get(30, 30, Bitmap.Config.ARGB_8888));
+
+        pool.clear();
+        assertEquals(0, pool.size());
+    }
+
+    @Test
+    public void putTrimsToTheMaximumSize() {
+        BitmapPool pool = new BitmapPool(1000);
+        pool.put(mockBitmap(10, 10, Bitmap.Config.ARGB_8888));
+        pool.put(mockBitmap(15, 15, Bitmap.Config.ARGB_8888));
+        assertEquals(400, pool.size());
+
+        // Larger than the whole pool, never added
+        pool.put(mockBitmap(20, 20, Bitmap.Config.ARGB_8888));
+        assertEquals(400, pool.size());
+        assertEquals(2, pool.putCount());
+    }
+
+    @Test
+    public void immutableAndRecycledBitmapsAreIgnored() {
+        BitmapPool pool = new BitmapPool(100000);
+        Bitmap immutable = mockBitmap(10, 10, Bitmap.Config.ARGB_8888);
+        when(immutable.isMutable()).thenReturn(false);
+        Bitmap recycled = mockBitmap(10, 10, Bitmap.Config.ARGB_8888);
+        when(recycled.isRecycled()).thenReturn(true);
+        pool.put(immutable);
+        pool.put(recycled);
+        pool.put(null);
+
+        assertEquals(0, pool.size());
+        assertEquals(0, pool.putCount());
+    }
+}
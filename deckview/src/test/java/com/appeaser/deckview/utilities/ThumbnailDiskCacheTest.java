@@ -0,0 +1,169 @@
+package com.appeaser.deckview.utilities;
+
+import android.graphics.Bitmap;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.stubbing.Answer;
+
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyInt;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+public class ThumbnailDiskCacheTest {
+
+    private static final int CARD_SIZE = 256;
+
+    @Rule
+    public TemporaryFolder mFolder = new TemporaryFolder();
+
+    /**
+     * Returns a bitmap that compresses to the given number of bytes.
+     */
+    static Bitmap mockBitmap(final int compressedBytes) {
+        Bitmap bitmap = mock(Bitmap.class);
+        when(bitmap.compress(any(Bitmap.CompressFormat.class), anyInt(), any(OutputStream.class)))
+                .thenAnswer(new Answer<Boolean>() {
+                    @Override
+                    public Boolean answer(InvocationOnMock invocation) throws IOException {
+                        OutputStream out = (OutputStream) invocation.getArguments()[2];
+                        out.write(new byte[compressedBytes]);
+                        return true;
+                    }
+                });
+        return bitmap;
+    }
+
+    private static boolean contains(ThumbnailDiskCache cache, String id) throws IOException {
+        InputStream in = cache.get(id, CARD_SIZE, CARD_SIZE);
+        if (in == null) return false;
+        in.close();
+        return true;
+    }
+
+    @Test
+    public void bucketSizesRoundUp() {
+        assertEquals(64, ThumbnailDiskCache.getBucketSize(1));
+        assertEquals(64, ThumbnailDiskCache.getBucketSize(64));
+        assertEquals(128, ThumbnailDiskCache.getBucketSize(65));
+    }
+
+    @Test
+    public void storedThumbnailsAreReadBack() throws IOException {
+        ThumbnailDiskCache cache = new ThumbnailDiskCache(mFolder.getRoot(), 1000);
+        cache.put("a", CARD_SIZE, CARD_SIZE, mockBitmap(100));
+
+        InputStream in = cache.get("a", CARD_SIZE, CARD_SIZE);
+        assertNotNull(in);
+        assertEquals(100, in.available());
+        in.close();
+        assertEquals(100, cache.size());
+
+        // Card sizes in the same bucket share the entry, other sizes do not
+        assertTrue(contains(cache, "a"));
+        InputStream sameBucket = cache.get("a", CARD_SIZE - 10, CARD_SIZE - 10);
+        assertNotNull(sameBucket);
+        sameBucket.close();
+        assertNull(cache.get("a", CARD_SIZE * 2, CARD_SIZE));
+        assertNull(cache.get("b", CARD_SIZE, CARD_SIZE));
+    }
+
+    @Test
+    public void leastRecentlyUsedEntriesAreEvicted() throws IOException {
+        ThumbnailDiskCache cache = new ThumbnailDiskCache(mFolder.getRoot(), 250);
+        cache.put("a", CARD_SIZE, CARD_SIZE, mockBitmap(100));
+        cache.put("b", CARD_SIZE, CARD_SIZE, mockBitmap(100));
+        assertTrue(contains(cache, "a"));
+        cache.put("c", CARD_SIZE, CARD_SIZE, mockBitmap(100));
+
+        assertEquals(200, cache.size());
+        assertTrue(contains(cache, "a"));
+        assertFalse(contains(cache, "b"));
+        assertTrue(contains(cache, "c"));
+    }
+
+    @Test
+    public void journalReplayRestoresTheEntriesAndTheirOrder() throws IOException {
+        ThumbnailDiskCache cache = new ThumbnailDiskCache(mFolder.getRoot(), 250);
+        cache.put("a", CARD_SIZE, CARD_SIZE, mockBitmap(100));
+        cache.put("b", CARD_SIZE, CARD_SIZE, mockBitmap(100));
+        cache.put("c", CARD_SIZE, CARD_SIZE, mockBitmap(50));
+        // b is evicted first after the replay
+        assertTrue(contains(cache, "a"));
+
+        ThumbnailDiskCache reopened = new ThumbnailDiskCache(mFolder.getRoot(), 250);
+        assertTrue(contains(reopened, "c"));
+        assertEquals(250, reopened.size());
+
+        reopened.put("d", CARD_SIZE, CARD_SIZE, mockBitmap(100));
+        assertFalse(contains(reopened, "b"));
+        assertTrue(contains(reopened, "a"));
+        assertTrue(contains(reopened, "c"));
+        assertTrue(contains(reopened, "d"));
+    }
+
+    @Test
+    public void replayDropsEntriesWithoutFilesAndFilesWithoutEntries() throws IOException {
+        File directory = mFolder.getRoot();
+        ThumbnailDiskCache cache = new ThumbnailDiskCache(directory, 1000);
+        cache.put("a", CARD_SIZE, CARD_SIZE, mockBitmap(100));
+        cache.put("b", CARD_SIZE, CARD_SIZE, mockBitmap(100));
+
+        // Delete the file of one entry, and leave a half written file behind
+        File[] entryFiles = directory.listFiles();
+        for (File file : entryFiles) {
+            if (file.getName().endsWith(".webp") && file.length() == 100) {
+                file.delete();
+                break;
+            }
+        }
+        File stray = new File(directory, "stray.webp.1.tmp");
+        FileWriter writer = new FileWriter(stray);
+        writer.write("partial");
+        writer.close();
+
+        ThumbnailDiskCache reopened = new ThumbnailDiskCache(directory, 1000);
+        assertTrue(contains(reopened, "a") != contains(reopened, "b"));
+        assertEquals(100, reopened.size());
+        assertFalse(stray.exists());
+    }
+
+    @Test
+    public void unknownJournalFormatStartsOver() throws IOException {
+        File directory = mFolder.getRoot();
+        ThumbnailDiskCache cache = new ThumbnailDiskCache(directory, 1000);
+        cache.put("a", CARD_SIZE, CARD_SIZE, mockBitmap(100));
+
+        FileWriter writer = new FileWriter(new File(directory, "journal"));
+        writer.write("some.other.cache 2\n");
+        writer.close();
+
+        ThumbnailDiskCache reopened = new ThumbnailDiskCache(directory, 1000);
+        assertFalse(contains(reopened, "a"));
+        assertEquals(0, reopened.size());
+    }
+
+    @Test
+    public void clearDeletesAllEntries() throws IOException {
+        ThumbnailDiskCache cache = new ThumbnailDiskCache(mFolder.getRoot(), 1000);
+        cache.put("a", CARD_SIZE, CARD_SIZE, mockBitmap(100));
+        cache.clear();
+
+        assertEquals(0, cache.size());
+        assertFalse(contains(new ThumbnailDiskCache(mFolder.getRoot(), 1000), "a"));
+    }
+}
@@ -0,0 +1,201 @@
+package com.appeaser.deckview.views;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class DeckListDifferTest {
+
+    @Test
+    public void identicalListsHaveNoOps() {
+        List<String> list = Arrays.asList("a", "b", "c");
+        assertTrue(DeckListDiffer.computeDiff(list, list).isEmpty());
+    }
+
+    @Test
+    public void duplicatesCanNotBeDiffed() {
+        assertNull(DeckListDiffer.computeDiff(Arrays.asList("a", "a"), Arrays.asList("a")));
+        assertNull(DeckListDiffer.computeDiff(Arrays.asList("a"), Arrays.asList("a", "a")));
+    }
+
+    @Test
+    public void removalsAndInsertionsAreMergedIntoRanges() {
+        List<String> oldList = Arrays.asList("a", "b", "c", "d", "e");
+        List<String> newList = Arrays.asList("a", "x", "y", "e", "z");
+        List<DeckListDiffer.Op> ops = DeckListDiffer.computeDiff(oldList, newList);
+
+        assertEquals(3, ops.size());
+        assertOp(ops.get(0), DeckListDiffer.OP_REMOVE, 1, 3);
+        assertOp(ops.get(1), DeckListDiffer.OP_INSERT, 1, 2);
+        assertOp(ops.get(2), DeckListDiffer.OP_INSERT, 4, 1);
+        assertEquals(newList, apply(oldList, newList, ops));
+    }
+
+    @Test
+    public void reversedListKeepsOneItemInPlace() {
+        List<String> oldList = Arrays.asList("a", "b", "c", "d", "e");
+        List<String> newList = Arrays.asList("e", "d", "c", "b", "a");
+        List<DeckListDiffer.Op> ops = DeckListDiffer.computeDiff(oldList, newList);
+
+        assertEquals(4, ops.size());
+        assertEquals(newList, apply(oldList, newList, ops));
+    }
+
+    @Test
+    public void largeReversalProducesTheNewList() {
+        List<Integer> oldList = sequence(2000);
+        List<Integer> newList = new ArrayList<>(oldList);
+        Collections.reverse(newList);
+        List<DeckListDiffer.Op> ops = DeckListDiffer.computeDiff(oldList, newList);
+
+        assertEquals(oldList.size() - 1, ops.size());
+        assertEquals(newList, apply(oldList, newList, ops));
+    }
+
+    @Test(timeout = 5000)
+    public void hugeReversalIsNotQuadratic() {
+        List<Integer> oldList = sequence(100000);
+        List<Integer> newList = new ArrayList<>(oldList);
+        Collections.reverse(newList);
+        List<DeckListDiffer.Op> ops = DeckListDiffer.computeDiff(oldList, newList);
+
+        assertEquals(oldList.size() - 1, ops.size());
+        for (DeckListDiffer.Op op : ops) {
+            assertEquals(DeckListDiffer.OP_MOVE, op.type);
+        }
+    }
+
+    @Test
+    public void singleMoveToTheFront() {
+        List<String> oldList = Arrays.asList("a", "b", "c", "d");
+        List<String> newList = Arrays.asList("d", "a", "b", "c");
+        List<DeckListDiffer.Op> ops = DeckListDiffer.computeDiff(oldList, newList);
+
+        assertEquals(1, ops.size());
+        assertOp(ops.get(0), DeckListDiffer.OP_MOVE, 3, 0);
+    }
+
+    @Test
+    public void longestIncreasingSubsequence() {
+        int[] values = {3, 1, 2, 5, 4, 6};
+        boolean[] result = DeckListDiffer.longestIncreasingSubsequence(values);
+
+        int length = 0;
+        int prev = Integer.MIN_VALUE;
+        for (int i = 0; i < values.length; i++) {
+            if (!result[i]) continue;
+            assertTrue(values[i] > prev);
+            prev = values[i];
+            length++;
+        }
+        assertEquals(4, length);
+        assertEquals(0, DeckListDiffer.longestIncreasingSubsequence(new int[0]).length);
+    }
+
+    @Test
+    public void randomEditsProduceTheNewListWithMinimalMoves() {
+        Random random = new Random(42);
+        for (int round = 0; round < 500; round++) {
+            List<Integer> oldList = randomList(random, 0);
+            List<Integer> newList = randomList(random, 10);
+            List<DeckListDiffer.Op> ops = DeckListDiffer.computeDiff(oldList, newList);
+
+            assertEquals(newList, apply(oldList, newList, ops));
+            int moves = 0;
+            for (DeckListDiffer.Op op : ops) {
+                if (op.type == DeckListDiffer.OP_MOVE) moves++;
+            }
+            assertEquals(keptCount(oldList, newList) - keptInOrderCount(oldList, newList), moves);
+        }
+    }
+
+    private static void assertOp(DeckListDiffer.Op op, int type, int position, int count) {
+        assertEquals(type, op.type);
+        assertEquals(position, op.position);
+        assertEquals(count, op.count);
+    }
+
+    /**
+     * Applies the updates to a copy of oldList, taking the inserted items from newList.
+     */
+    private static <T> List<T> apply(List<T> oldList, List<T> newList,
+                                     List<DeckListDiffer.Op> ops) {
+        ArrayList<T> list = new ArrayList<>(oldList);
+        for (DeckListDiffer.Op op : ops) {
+            switch (op.type) {
+                case DeckListDiffer.OP_REMOVE:
+                    list.subList(op.position, op.position + op.count).clear();
+                    break;
+                case DeckListDiffer.OP_MOVE:
+                    list.add(op.count, list.remove(op.position));
+                    break;
+                case DeckListDiffer.OP_INSERT:
+                    list.addAll(op.position, newList.subList(op.position,
+                            op.position + op.count));
+                    break;
+            }
+        }
+        return list;
+    }
+
+    private static List<Integer> sequence(int size) {
+        ArrayList<Integer> list = new ArrayList<>(size);
+        for (int i = 0; i < size; i++) {
+            list.add(i);
+        }
+        return list;
+    }
+
+    /**
+     * Returns a shuffled subset of 0..19, with ids from offset on.
+     */
+    private static List<Integer> randomList(Random random, int offset) {
+        ArrayList<Integer> list = new ArrayList<>();
+        for (int i = 0; i < 20; i++) {
+            if (random.nextInt(4) != 0) {
+                list.add(offset + i);
+            }
+        }
+        Collections.shuffle(list, random);
+        return list;
+    }
+
+    private static int keptCount(List<Integer> oldList, List<Integer> newList) {
+        int count = 0;
+        for (Integer item : oldList) {
+            if (newList.contains(item)) count++;
+        }
+        return count;
+    }
+
+    /**
+     * Returns the length of the longest run of kept items that is already in the new order.
+     */
+    private static int keptInOrderCount(List<Integer> oldList, List<Integer> newList) {
+        ArrayList<Integer> targets = new ArrayList<>();
+        for (Integer item : oldList) {
+            int target = newList.indexOf(item);
+            if (target >= 0) targets.add(target);
+        }
+        int[] lengths = new int[targets.size()];
+        int best = 0;
+        for (int i = 0; i < lengths.length; i++) {
+            lengths[i] = 1;
+            for (int j = 0; j < i; j++) {
+                if (targets.get(j) < targets.get(i)) {
+                    lengths[i] = Math.max(lengths[i], lengths[j] + 1);
+                }
+            }
+            best = Math.max(best, lengths[i]);
+        }
+        return best;
+    }
+}
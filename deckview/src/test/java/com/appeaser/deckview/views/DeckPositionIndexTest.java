@@ -0,0 +1,144 @@
+package com.appeaser.deckview.views;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+
+public class DeckPositionIndexTest {
+
+    /**
+     * Serves a list of items, with the numeric value of each item as its stable id if enabled.
+     */
+    static class ListAdapter extends DeckView.Adapter<String> {
+        final List<String> items;
+        final boolean stableIds;
+
+        ListAdapter(List<String> items, boolean stableIds) {
+            this.items = items;
+            this.stableIds = stableIds;
+        }
+
+        @Override
+        public int getItemCount() {
+            return items.size();
+        }
+
+        @Override
+        public String getItem(int position) {
+            return items.get(position);
+        }
+
+        @Override
+        public long getItemId(int position) {
+            String item = items.get(position);
+            return stableIds && item != null ? Long.parseLong(item) : NO_ID;
+        }
+
+        @Override
+        public boolean hasStableIds() {
+            return stableIds;
+        }
+    }
+
+    private static List<String> items(String... items) {
+        return new ArrayList<>(Arrays.asList(items));
+    }
+
+    @Test
+    public void stableIdsFollowTheirItems() {
+        List<String> items = items("10", "11", "12", "13");
+        ListAdapter adapter = new ListAdapter(items, true);
+        DeckPositionIndex index = new DeckPositionIndex();
+
+        Collections.reverse(items);
+        items.remove("12");
+        index.rebuild(adapter);
+
+        // The views only remember the id of their item, not the item
+        assertEquals(2, index.getPosition(null, 10));
+        assertEquals(1, index.getPosition(null, 11));
+        assertEquals(-1, index.getPosition(null, 12));
+        assertEquals(0, index.getPosition(null, 13));
+        assertEquals(-1, index.getPosition("13", DeckView.Adapter.NO_ID));
+    }
+
+    @Test
+    public void itemsAreMatchedByEqualsWithoutStableIds() {
+        List<String> items = items("a", "b", "c");
+        ListAdapter adapter = new ListAdapter(items, false);
+        DeckPositionIndex index = new DeckPositionIndex();
+
+        items.add(0, "x");
+        index.rebuild(adapter);
+
+        assertEquals(1, index.getPosition(new String("a"), DeckView.Adapter.NO_ID));
+        assertEquals(3, index.getPosition("c", DeckView.Adapter.NO_ID));
+        assertEquals(-1, index.getPosition("y", DeckView.Adapter.NO_ID));
+        assertEquals(-1, index.getPosition(null, DeckView.Adapter.NO_ID));
+    }
+
+    @Test
+    public void itemsMovedFarAwayAreFound() {
+        List<String> items = new ArrayList<>();
+        for (int i = 0; i < 100000; i++) {
+            items.add(String.valueOf(i));
+        }
+        ListAdapter adapter = new ListAdapter(items, true);
+        DeckPositionIndex index = new DeckPositionIndex();
+
+        items.add(items.remove(0));
+        index.rebuild(adapter);
+
+        assertEquals(items.size() - 1, index.getPosition(null, 0));
+        assertEquals(0, index.getPosition(null, 1));
+    }
+
+    @Test
+    public void placeholdersAreLeftOut() {
+        ListAdapter adapter = new ListAdapter(items("1", null, "3"), true);
+        DeckPositionIndex index = new DeckPositionIndex();
+        index.rebuild(adapter);
+
+        assertEquals(0, index.getPosition(null, 1));
+        assertEquals(2, index.getPosition(null, 3));
+        assertEquals(-1, index.getPosition(null, DeckView.Adapter.NO_ID));
+    }
+
+    @Test
+    public void adaptersCanIndexPartOfTheirItems() {
+        ListAdapter adapter = new ListAdapter(items("1", "2", "3", "4"), true) {
+            @Override
+            void indexPositions(DeckPositionIndex index) {
+                // Like a paged adapter with only the second half loaded
+                index.addRange(this, 2, 4);
+            }
+        };
+        DeckPositionIndex index = new DeckPositionIndex();
+        index.rebuild(adapter);
+
+        assertEquals(-1, index.getPosition(null, 1));
+        assertEquals(2, index.getPosition(null, 3));
+        assertEquals(3, index.getPosition(null, 4));
+    }
+
+    @Test
+    public void rebuildAndClearDropTheOldEntries() {
+        List<String> items = items("1", "2");
+        ListAdapter adapter = new ListAdapter(items, true);
+        DeckPositionIndex index = new DeckPositionIndex();
+        index.rebuild(adapter);
+
+        items.remove("1");
+        index.rebuild(adapter);
+        assertEquals(-1, index.getPosition(null, 1));
+        assertEquals(0, index.getPosition(null, 2));
+
+        index.clear();
+        assertEquals(-1, index.getPosition(null, 2));
+    }
+}
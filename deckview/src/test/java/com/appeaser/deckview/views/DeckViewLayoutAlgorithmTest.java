@@ -0,0 +1,69 @@
+package com.appeaser.deckview.views;
+
+import com.appeaser.deckview.helpers.TestConfigs;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class DeckViewLayoutAlgorithmTest {
+
+    // The progress of the front most card at a stack scroll of 0, see DeckViewLayoutAlgorithm
+    private static final float FRONT_MOST_CARD_TOP_P = 0.5f;
+
+    private static DeckViewLayoutAlgorithm create(int taskCount, float taskProgressOffset) {
+        DeckViewLayoutAlgorithm algorithm =
+                new DeckViewLayoutAlgorithm(TestConfigs.createLayoutConfig());
+        algorithm.setTaskProgress(taskCount, taskProgressOffset);
+        return algorithm;
+    }
+
+    @Test
+    public void emptyDeckHasAnEmptyRange() {
+        int[] range = new int[2];
+        create(0, 0.125f).getCandidateTaskRange(0f, range);
+        assertTrue(range[0] < range[1]);
+    }
+
+    @Test
+    public void zeroOffsetCoversAllTasks() {
+        DeckViewLayoutAlgorithm algorithm = create(5, 0f);
+        int[] range = new int[2];
+        algorithm.getCandidateTaskRange(0.3f, range);
+        assertEquals(4, range[0]);
+        assertEquals(0, range[1]);
+        assertEquals(5, algorithm.getMaxCandidateTaskCount());
+    }
+
+    @Test
+    public void rangeIsClampedToTheDeck() {
+        DeckViewLayoutAlgorithm algorithm = create(10, 0.125f);
+        int[] range = new int[2];
+        algorithm.getCandidateTaskRange(-10f, range);
+        assertEquals(0, range[1]);
+        algorithm.getCandidateTaskRange(100f, range);
+        assertEquals(9, range[0]);
+    }
+
+    @Test
+    public void rangeContainsEveryTaskOnTheCurve() {
+        int taskCount = 1000;
+        float offset = 0.125f;
+        DeckViewLayoutAlgorithm algorithm = create(taskCount, offset);
+        int maxCount = algorithm.getMaxCandidateTaskCount();
+        int[] range = new int[2];
+        for (float stackScroll = -1f; stackScroll <= taskCount * offset; stackScroll += 0.01f) {
+            algorithm.getCandidateTaskRange(stackScroll, range);
+            assertTrue(range[0] - range[1] + 1 <= maxCount);
+            for (int i = 0; i < taskCount; i++) {
+                // Tasks on the curve must be candidates, and so must the one just behind the
+                // top, which is still partly visible
+                float p = FRONT_MOST_CARD_TOP_P + i * offset - stackScroll;
+                if (p >= -offset && p <= 1f) {
+                    assertTrue(i <= range[0] && i >= range[1]);
+                }
+            }
+        }
+    }
+}
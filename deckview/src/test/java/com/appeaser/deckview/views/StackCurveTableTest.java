@@ -0,0 +1,84 @@
+package com.appeaser.deckview.views;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class StackCurveTableTest {
+
+    private static final int SAMPLES = 10000;
+
+    /**
+     * A curve that is flat except for a near vertical step, where the cubic interpolation
+     * would overshoot without the monotone tangents.
+     */
+    static class StepCurve implements StackCurve {
+        @Override
+        public float evaluate(float x) {
+            return x < 0.5f ? 0f : (x < 0.51f ? (x - 0.5f) * 100f : 1f);
+        }
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void resolutionMustBeAtLeastTwo() {
+        new StackCurveTable(new LogStackCurve(), 1);
+    }
+
+    @Test
+    public void tablesSpanZeroToOne() {
+        StackCurveTable table = new StackCurveTable(new LogStackCurve(),
+                StackCurve.DEFAULT_RESOLUTION);
+        assertEquals(0f, table.xp[0], 0f);
+        assertEquals(1f, table.xp[table.steps], 0f);
+        assertEquals(0f, table.px[0], 0f);
+        assertEquals(1f, table.px[table.steps], 0f);
+    }
+
+    @Test
+    public void tablesAreMonotone() {
+        StackCurve[] curves = {new LogStackCurve(), new StepCurve()};
+        for (StackCurve curve : curves) {
+            StackCurveTable table = new StackCurveTable(curve, StackCurve.DEFAULT_RESOLUTION);
+            for (int i = 1; i <= table.steps; i++) {
+                assertTrue(table.xp[i] >= table.xp[i - 1]);
+                assertTrue(table.px[i] >= table.px[i - 1]);
+            }
+        }
+    }
+
+    @Test
+    public void lookupsAreMonotoneWithBothInterpolations() {
+        StackCurve[] curves = {new LogStackCurve(), new StepCurve()};
+        int[] interpolations = {StackCurve.INTERPOLATION_LINEAR, StackCurve.INTERPOLATION_CUBIC};
+        for (StackCurve curve : curves) {
+            StackCurveTable table = new StackCurveTable(curve, 64);
+            for (int interpolation : interpolations) {
+                float prevX = table.progressToX(0f, interpolation);
+                float prevP = table.xToProgress(0f, interpolation);
+                for (int i = 1; i <= SAMPLES; i++) {
+                    float v = (float) i / SAMPLES;
+                    float x = table.progressToX(v, interpolation);
+                    float p = table.xToProgress(v, interpolation);
+                    assertTrue(x >= prevX);
+                    assertTrue(p >= prevP);
+                    assertTrue(x >= 0f && x <= 1f);
+                    assertTrue(p >= 0f && p <= 1f);
+                    prevX = x;
+                    prevP = p;
+                }
+            }
+        }
+    }
+
+    @Test
+    public void lookupsAreInverses() {
+        StackCurveTable table = new StackCurveTable(new LogStackCurve(),
+                StackCurve.DEFAULT_RESOLUTION);
+        for (int i = 0; i <= 100; i++) {
+            float p = i / 100f;
+            float x = table.progressToX(p, StackCurve.INTERPOLATION_CUBIC);
+            assertEquals(p, table.xToProgress(x, StackCurve.INTERPOLATION_CUBIC), 0.005f);
+        }
+    }
+}
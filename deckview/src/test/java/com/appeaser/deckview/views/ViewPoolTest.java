@@ -0,0 +1,223 @@
+package com.appeaser.deckview.views;
+
+import android.content.Context;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+
+public class ViewPoolTest {
+
+    /**
+     * Data with a given hash code, so that the probe runs of the pool index can be arranged.
+     */
+    static class Key {
+        final int id;
+        final int hash;
+
+        Key(int id, int hash) {
+            this.id = id;
+            this.hash = hash;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            return o instanceof Key && ((Key) o).id == id;
+        }
+
+        @Override
+        public int hashCode() {
+            return hash;
+        }
+    }
+
+    /**
+     * Views are plain objects, each bound to one key for its whole life.
+     */
+    static class Consumer implements ViewPool.ViewPoolConsumer<Object, Key> {
+        final HashMap<Object, Key> boundData = new HashMap<>();
+        int createCount;
+
+        Object bind(Key key) {
+            Object v = new Object();
+            boundData.put(v, key);
+            return v;
+        }
+
+        @Override
+        public Object createView(Context context) {
+            createCount++;
+            return new Object();
+        }
+
+        @Override
+        public void prepareViewToEnterScrap(Object v) {
+        }
+
+        @Override
+        public void prepareViewToEnterPool(Object v) {
+        }
+
+        @Override
+        public void prepareViewToLeavePool(Object v, Key prepareData, int position,
+                                           boolean isNewView, boolean isDataBound) {
+        }
+
+        @Override
+        public Key getPreferredData(Object v) {
+            return boundData.get(v);
+        }
+
+        @Override
+        public void discardView(Object v, boolean isNewView) {
+        }
+
+        @Override
+        public long getRetainedBytes(Object v) {
+            return 0;
+        }
+    }
+
+    private Consumer mConsumer;
+    private ViewPool<Object, Key> mPool;
+
+    @Before
+    public void setUp() {
+        mConsumer = new Consumer();
+        mPool = new ViewPool<>(null, mConsumer);
+        mPool.setMaxSize(1000);
+    }
+
+    @Test
+    public void pickUpFindsTheViewBoundToTheData() {
+        Key a = new Key(1, 1);
+        Key b = new Key(2, 2);
+        Object va = mConsumer.bind(a);
+        Object vb = mConsumer.bind(b);
+        mPool.returnViewToPool(va);
+        mPool.returnViewToPool(vb);
+
+        assertSame(va, mPool.pickUpViewFromPool(a, a, 0));
+        assertSame(vb, mPool.pickUpViewFromPool(b, b, 0));
+        assertEquals(0, mPool.size());
+        assertEquals(0, mConsumer.createCount);
+    }
+
+    @Test
+    public void removalFromAWrappedProbeRunKeepsTheRestReachable() {
+        // All keys share the last home slot of the 16 slot index, so the probe run wraps around
+        Key[] keys = new Key[7];
+        Object[] views = new Object[keys.length];
+        for (int i = 0; i < keys.length; i++) {
+            keys[i] = new Key(i, 15);
+            views[i] = mConsumer.bind(keys[i]);
+            mPool.returnViewToPool(views[i]);
+        }
+
+        // Remove from the start, the middle and the end of the run
+        int[] order = {0, 3, 6, 1, 5, 2, 4};
+        for (int i : order) {
+            assertSame(views[i], mPool.pickUpViewFromPool(keys[i], keys[i], 0));
+        }
+        assertEquals(0, mPool.size());
+    }
+
+    @Test
+    public void removalMovesOnlyEntriesWhoseHomeIsBeforeTheHole() {
+        // Two runs that touch, entries of the second run must not be moved in front of their
+        // home slot
+        Key a = new Key(1, 3);
+        Key b = new Key(2, 3);
+        Key c = new Key(3, 4);
+        Key d = new Key(4, 5);
+        Object va = mConsumer.bind(a);
+        Object vb = mConsumer.bind(b);
+        Object vc = mConsumer.bind(c);
+        Object vd = mConsumer.bind(d);
+        mPool.returnViewToPool(va);
+        mPool.returnViewToPool(vb);
+        mPool.returnViewToPool(vc);
+        mPool.returnViewToPool(vd);
+
+        assertSame(vb, mPool.pickUpViewFromPool(b, b, 0));
+        assertSame(vd, mPool.pickUpViewFromPool(d, d, 0));
+        assertSame(va, mPool.pickUpViewFromPool(a, a, 0));
+        assertSame(vc, mPool.pickUpViewFromPool(c, c, 0));
+    }
+
+    @Test
+    public void randomOperationsMatchAReferenceList() {
+        Random random = new Random(7);
+        ArrayList<Key> pooled = new ArrayList<>();
+        HashMap<Key, Object> views = new HashMap<>();
+        int nextId = 0;
+        for (int step = 0; step < 5000; step++) {
+            if (pooled.isEmpty() || (pooled.size() < 40 && random.nextBoolean())) {
+                // Few distinct hashes make for long, overlapping probe runs
+                Key key = new Key(nextId++, random.nextInt(6) * 7);
+                Object v = mConsumer.bind(key);
+                views.put(key, v);
+                mPool.returnViewToPool(v);
+                pooled.add(key);
+            } else {
+                Key key = pooled.remove(random.nextInt(pooled.size()));
+                assertSame(views.get(key), mPool.pickUpViewFromPool(key, key, 0));
+            }
+            assertEquals(pooled.size(), mPool.size());
+        }
+        assertEquals(0, mConsumer.createCount);
+    }
+
+    @Test
+    public void scrapViewsAreReboundWithoutThePool() {
+        Key a = new Key(1, 1);
+        Object va = mConsumer.bind(a);
+        mPool.returnViewToScrap(va);
+
+        assertEquals(1, mPool.scrapSize());
+        assertEquals(0, mPool.size());
+        assertSame(va, mPool.pickUpViewFromPool(a, a, 0));
+        assertEquals(0, mPool.scrapSize());
+    }
+
+    @Test
+    public void clearScrapViewMovesOnlyThatView() {
+        Key a = new Key(1, 1);
+        Key b = new Key(2, 2);
+        Object va = mConsumer.bind(a);
+        Object vb = mConsumer.bind(b);
+        mPool.returnViewToScrap(va);
+        mPool.returnViewToScrap(vb);
+        assertSame(va, mPool.getScrapView(0));
+        assertSame(vb, mPool.getScrapView(1));
+
+        mPool.clearScrapView(0);
+        assertEquals(1, mPool.scrapSize());
+        assertEquals(1, mPool.size());
+        assertSame(vb, mPool.getScrapView(0));
+
+        // The cleared view is in the pool, still indexed by its data
+        assertSame(va, mPool.pickUpViewFromPool(a, a, 0));
+    }
+
+    @Test
+    public void fullScrapMovesTheOldestViewToThePool() {
+        mPool.setScrapCapacity(2);
+        Object[] views = new Object[3];
+        for (int i = 0; i < views.length; i++) {
+            views[i] = mConsumer.bind(new Key(i, i));
+            mPool.returnViewToScrap(views[i]);
+        }
+
+        assertEquals(2, mPool.scrapSize());
+        assertEquals(1, mPool.size());
+        assertSame(views[1], mPool.getScrapView(0));
+        assertSame(views[2], mPool.getScrapView(1));
+    }
+}
@@ -96,8 +96,9 @@ public class DeckViewSampleActivity extends Activity {
 
             @Override
             public void onViewDismissed(Datum item) {
-                mEntries.remove(item);
-                mDeckView.notifyDataSetChanged();
+                int position = mEntries.indexOf(item);
+                mEntries.remove(position);
+                mDeckView.notifyItemRemoved(position);
             }
 
             @Override
@@ -190,7 +191,7 @@ public class DeckViewSampleActivity extends Activity {
             datum.link = "http://lorempixel.com/" + imageSize + "/" + imageSize
                     + "/sports/" + "ID " + datum.id + "/";
             mEntries.add(datum);
-            mDeckView.notifyDataSetChanged();
+            mDeckView.notifyItemInserted(mEntries.size() - 1);
             return true;
         } else if (id == R.id.action_add_multiple) {
             // Add multiple items (between 5 & 10 items)
@@ -200,6 +201,8 @@ public class DeckViewSampleActivity extends Activity {
             // adding between 5 and 10 items
             int numberOfItemsToAdd = rand.nextInt(6) + 5;
 
+            // Animate all the insertions at once
+            mDeckView.beginBatchUpdate();
             for (int i = 0; i < numberOfItemsToAdd; i++) {
                 int atIndex = mEntries.size() > 0 ?
                         rand.nextInt(mEntries.size()) : 0;
@@ -210,9 +213,9 @@ public class DeckViewSampleActivity extends Activity {
                         + "/sports/" + "ID " + datum.id + "/";
                 datum.headerTitle = "(New) Image ID " + datum.id;
                 mEntries.add(atIndex, datum);
+                mDeckView.notifyItemInserted(atIndex);
             }
-
-            mDeckView.notifyDataSetChanged();
+            mDeckView.endBatchUpdate();
             return true;
         }
 